@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import vavi.awt.image.jna.avif.AvifLibrary;
+
+
+/**
+ * Properties of an AVIF file, the result of {@link AvifParser}.
+ * <p>
+ * The values are the ones of the primary item (or its first tile for a grid),
+ * the same as libavif's decoder reports after {@code avifDecoderParse}.
+ * Transforms (irot, imir, clap) are not applied to the dimensions.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+public final class AvifInfo {
+
+    String majorBrand;
+    final List<String> compatibleBrands = new ArrayList<>();
+    int primaryItemId;
+    int width;
+    int height;
+    int depth = 8;
+    int yuvFormat = AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_NONE;
+    boolean alpha;
+    boolean alphaPremultiplied;
+    int colorPrimaries = AvifLibrary.AVIF_COLOR_PRIMARIES_UNSPECIFIED;
+    int transferCharacteristics = AvifLibrary.AVIF_TRANSFER_CHARACTERISTICS_UNSPECIFIED;
+    int matrixCoefficients = AvifLibrary.AVIF_MATRIX_COEFFICIENTS_UNSPECIFIED;
+    boolean fullRange = true;
+    byte[] icc;
+    int rotation;
+    int mirrorAxis = -1;
+    int[] clap;
+    int gridRows;
+    int gridColumns;
+    final List<Integer> thumbnailItemIds = new ArrayList<>();
+    boolean exif;
+    boolean xmp;
+    int frameCount = 1;
+
+    /** */
+    AvifInfo() {
+    }
+
+    /** @return the major brand of ftyp, e.g. "avif", "avis" */
+    public String getMajorBrand() {
+        return majorBrand;
+    }
+
+    /** @return the compatible brands of ftyp */
+    public List<String> getCompatibleBrands() {
+        return Collections.unmodifiableList(compatibleBrands);
+    }
+
+    /** @return pitm */
+    public int getPrimaryItemId() {
+        return primaryItemId;
+    }
+
+    /** @return ispe, or the output width for a grid */
+    public int getWidth() {
+        return width;
+    }
+
+    /** @return ispe, or the output height for a grid */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return av1C, or pixi when av1C is absent */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** @return av1C, {@link AvifLibrary.avifPixelFormat} */
+    public int getYuvFormat() {
+        return yuvFormat;
+    }
+
+    /** @return true when an alpha auxiliary item refers the primary item or an image sequence has an alpha track */
+    public boolean hasAlpha() {
+        return alpha;
+    }
+
+    /** @return true when the color is premultiplied by the alpha (prem) */
+    public boolean isAlphaPremultiplied() {
+        return alphaPremultiplied;
+    }
+
+    /** @return colr nclx, e.g. {@link AvifLibrary#AVIF_COLOR_PRIMARIES_BT709} */
+    public int getColorPrimaries() {
+        return colorPrimaries;
+    }
+
+    /** @return colr nclx, e.g. {@link AvifLibrary#AVIF_TRANSFER_CHARACTERISTICS_SRGB} */
+    public int getTransferCharacteristics() {
+        return transferCharacteristics;
+    }
+
+    /** @return colr nclx, e.g. {@link AvifLibrary#AVIF_MATRIX_COEFFICIENTS_BT601} */
+    public int getMatrixCoefficients() {
+        return matrixCoefficients;
+    }
+
+    /** @return colr nclx, true when absent */
+    public boolean isFullRange() {
+        return fullRange;
+    }
+
+    /** @return colr prof/rICC, null when absent */
+    public byte[] getIcc() {
+        return icc;
+    }
+
+    /** @return irot, anti-clockwise rotation in 90 degrees, 0 ~ 3 */
+    public int getRotation() {
+        return rotation;
+    }
+
+    /** @return imir axis, -1 when absent */
+    public int getMirrorAxis() {
+        return mirrorAxis;
+    }
+
+    /**
+     * @return clap, width n/d, height n/d, horizontal offset n/d and vertical offset n/d,
+     *         null when absent
+     */
+    public int[] getCleanAperture() {
+        return clap;
+    }
+
+    /** @return rows of the grid, 0 when the primary item is not a grid */
+    public int getGridRows() {
+        return gridRows;
+    }
+
+    /** @return columns of the grid, 0 when the primary item is not a grid */
+    public int getGridColumns() {
+        return gridColumns;
+    }
+
+    /** @return items which are thumbnails (thmb) of the primary item */
+    public List<Integer> getThumbnailItemIds() {
+        return Collections.unmodifiableList(thumbnailItemIds);
+    }
+
+    /** @return true when an Exif item describes the primary item */
+    public boolean hasExif() {
+        return exif;
+    }
+
+    /** @return true when an XMP item describes the primary item */
+    public boolean hasXmp() {
+        return xmp;
+    }
+
+    /** @return samples of the image sequence track, 1 for a still image */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AvifInfo{brand: %s, %dx%d, depth: %d, format: %d, alpha: %b, cicp: %d/%d/%d, frames: %d, grid: %dx%d, thumbnails: %s}",
+                majorBrand, width, height, depth, yuvFormat, alpha,
+                colorPrimaries, transferCharacteristics, matrixCoefficients,
+                frameCount, gridColumns, gridRows, thumbnailItemIds);
+    }
+}
@@ -0,0 +1,818 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.stream.ImageInputStream;
+
+import vavi.awt.image.jna.avif.AvifLibrary;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * A pure java parser of AVIF (ISOBMFF/HEIF) boxes.
+ * <p>
+ * Ported from libavif's read.c ({@code avifParseFileTypeBox}, {@code avifParseMetaBox}, ...),
+ * only the top level ftyp, meta and moov boxes are read, mdat is skipped, so that
+ * dimensions and metadata are available without loading libavif nor the image data.
+ * <p>
+ * covered boxes: ftyp, meta (hdlr, pitm, iloc, iinf/infe, iref, iprp/ipco/ipma, idat),
+ * properties (ispe, av1C, pixi, colr, irot, imir, clap, auxC), grid and moov (the sample count, an alpha track).
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+public final class AvifParser {
+
+    private static final Logger logger = getLogger(AvifParser.class.getName());
+
+    /** max size of a box which is loaded */
+    private static final int MAX_BOX_SIZE = 64 * 1024 * 1024;
+
+    /** urns of the alpha auxiliary image */
+    private static final List<String> ALPHA_URNS = List.of("urn:mpeg:mpegB:cicp:systems:auxiliary:alpha", "urn:mpeg:hevc:2015:auxid:1");
+
+    /** random access to the file */
+    private interface Source {
+        /** @return bytes at the offset from the start of the file, shorter at the end */
+        ByteBuffer read(long offset, int length) throws IOException;
+    }
+
+    /** an item property */
+    private record Property(String type, ByteBuffer body) {}
+
+    /** an item location */
+    private record Location(int constructionMethod, long[] offsets, long[] lengths) {}
+
+    /** an item */
+    private static final class Item {
+        String type = "";
+        String contentType = "";
+        final List<Integer> properties = new ArrayList<>();
+        /** reference type, to item ids */
+        final Map<String, List<Integer>> references = new HashMap<>();
+    }
+
+    /** boxes of meta */
+    private static final class Meta {
+        int primaryItemId;
+        final Map<Integer, Item> items = new HashMap<>();
+        final List<Property> properties = new ArrayList<>();
+        final Map<Integer, Location> locations = new HashMap<>();
+        ByteBuffer idat;
+
+        Item item(int id) {
+            return items.computeIfAbsent(id, k -> new Item());
+        }
+
+        /** @return the property of the item, null if absent */
+        ByteBuffer property(int itemId, String type) {
+            Item item = items.get(itemId);
+            if (item != null) {
+                for (int index : item.properties) {
+                    if (index > 0 && index <= properties.size() && properties.get(index - 1).type.equals(type)) {
+                        return properties.get(index - 1).body.duplicate();
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private AvifParser() {
+    }
+
+    /**
+     * Parses the buffer from its position to its limit, the position is not changed.
+     *
+     * @throws IOException when the buffer is not an AVIF or broken
+     */
+    public static AvifInfo parse(ByteBuffer buffer) throws IOException {
+        ByteBuffer b = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        return parse((offset, length) -> {
+            if (offset >= b.limit()) {
+                return ByteBuffer.allocate(0);
+            }
+            return b.slice((int) offset, (int) Math.min(length, b.limit() - offset)).order(ByteOrder.BIG_ENDIAN);
+        });
+    }
+
+    /**
+     * Parses the channel from its position, the position is restored.
+     *
+     * @throws IOException when the channel is not an AVIF or broken
+     */
+    public static AvifInfo parse(SeekableByteChannel channel) throws IOException {
+        long start = channel.position();
+        try {
+            return parse((offset, length) -> {
+                // a box up to the end of the file (size 0) requests the max size
+                ByteBuffer b = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - start - offset)));
+                channel.position(start + offset);
+                while (b.hasRemaining()) {
+                    if (channel.read(b) < 0) break;
+                }
+                return b.flip();
+            });
+        } finally {
+            channel.position(start);
+        }
+    }
+
+    /**
+     * Parses the stream from its position, the position is restored.
+     *
+     * @throws IOException when the stream is not an AVIF or broken
+     */
+    public static AvifInfo parse(ImageInputStream stream) throws IOException {
+        long start = stream.getStreamPosition();
+        stream.mark();
+        try {
+            return parse((offset, length) -> {
+                stream.seek(start + offset);
+                if (stream.length() < 0) {
+                    // a box up to the end of the stream (size 0) requests the max size, it's read by chunks
+                    ByteArrayOutputStream b = new ByteArrayOutputStream(Math.min(length, 8192));
+                    byte[] chunk = new byte[Math.min(length, 8192)];
+                    int r;
+                    while (b.size() < length && (r = stream.read(chunk, 0, Math.min(chunk.length, length - b.size()))) >= 0) {
+                        b.write(chunk, 0, r);
+                    }
+                    return ByteBuffer.wrap(b.toByteArray());
+                }
+                byte[] b = new byte[(int) Math.max(0, Math.min(length, stream.length() - start - offset))];
+                int l = 0;
+                while (l < b.length) {
+                    int r = stream.read(b, l, b.length - l);
+                    if (r < 0) break;
+                    l += r;
+                }
+                return ByteBuffer.wrap(b, 0, l).slice();
+            });
+        } finally {
+            stream.reset();
+        }
+    }
+
+    /**
+     * Checks the ftyp box without native code, the same as {@code avifPeekCompatibleFileType}.
+     *
+     * @param header the head of the file, from its position
+     * @return true if the major brand or a compatible brand is "avif" or "avis"
+     */
+    public static boolean isAvif(ByteBuffer header) {
+        ByteBuffer b = header.slice().order(ByteOrder.BIG_ENDIAN);
+        if (b.remaining() < 16) {
+            return false;
+        }
+        long size = b.getInt() & 0xffffffffL;
+        if (!fourcc(b).equals("ftyp")) {
+            return false;
+        }
+        if (size == 1) {
+            if (b.remaining() < 16) {
+                return false;
+            }
+            size = b.getLong() - 8;
+        }
+        long end = Math.min(size - 8, b.remaining()) - 8; // bytes of the compatible brands
+        if (end < 0) {
+            return false;
+        }
+        String majorBrand = fourcc(b);
+        b.getInt(); // minor version
+        if (majorBrand.equals("avif") || majorBrand.equals("avis")) {
+            return true;
+        }
+        for (int i = 0; i + 4 <= end; i += 4) {
+            String brand = fourcc(b);
+            if (brand.equals("avif") || brand.equals("avis")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Makes a copy of the file whose primary item is replaced.
+     * libavif decodes only the primary item, so that a thumbnail or another item
+     * can be decoded by itself from the copy. thmb references are unlinked in the
+     * copy, because libavif never takes a thumbnail as the primary item.
+     *
+     * @param encoded the file from its position to its limit, it is not modified
+     * @param itemId an item id, e.g. one of {@link AvifInfo#getThumbnailItemIds()}
+     * @return a direct buffer
+     * @throws IOException when pitm is not found or the item id doesn't fit in it
+     */
+    public static ByteBuffer withPrimaryItem(ByteBuffer encoded, int itemId) throws IOException {
+        ByteBuffer b = encoded.slice().order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer copy = ByteBuffer.allocateDirect(b.limit()).order(ByteOrder.BIG_ENDIAN);
+        copy.put(b).flip();
+
+        int[] meta = findBox(copy, 0, copy.limit(), "meta");
+        if (meta == null) {
+            throw new IOException("Box[meta] is not found");
+        }
+        int[] pitm = findBox(copy, meta[1] + 4, meta[2], "pitm");
+        if (pitm == null) {
+            throw new IOException("Box[pitm] is not found");
+        }
+        if (pitm[2] - pitm[1] < 6 || (copy.get(pitm[1]) & 0xff) != 0 && pitm[2] - pitm[1] < 8) {
+            throw new IOException("Box[pitm] is truncated");
+        }
+        if ((copy.get(pitm[1]) & 0xff) == 0) {
+            if (itemId > 0xffff) {
+                throw new IOException("Box[pitm] version 0 cannot refer item " + itemId);
+            }
+            copy.putShort(pitm[1] + 4, (short) itemId);
+        } else {
+            copy.putInt(pitm[1] + 4, itemId);
+        }
+
+        int[] iref = findBox(copy, meta[1] + 4, meta[2], "iref");
+        if (iref != null) {
+            int[] thmb;
+            int offset = iref[1] + 4;
+            while ((thmb = findBox(copy, offset, iref[2], "thmb")) != null) {
+                copy.put(thmb[0] + 4, "xthm".getBytes(StandardCharsets.ISO_8859_1));
+                offset = thmb[2];
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return the start, the start of the body and the end of the first box of the type
+     *         between start and end, null if not found
+     */
+    private static int[] findBox(ByteBuffer b, int start, int end, String type) {
+        int offset = start;
+        while (offset + 8 <= end) {
+            long size = b.getInt(offset) & 0xffffffffL;
+            int headerSize = 8;
+            if (size == 1) {
+                if (offset + 16 > end) break;
+                size = b.getLong(offset + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - offset;
+            }
+            if (size < headerSize || size > end - offset) {
+                break;
+            }
+            if (fourcc(b.slice(offset + 4, 4)).equals(type)) {
+                return new int[] {offset, offset + headerSize, (int) (offset + size)};
+            }
+            offset += (int) size;
+        }
+        return null;
+    }
+
+    /**
+     * Parses the top level boxes.
+     *
+     * @throws IOException also when a value is out of its box, e.g. a truncated property
+     */
+    private static AvifInfo parse(Source source) throws IOException {
+        try {
+            return parseBoxes(source);
+        } catch (RuntimeException e) { // BufferUnderflowException etc.
+            throw new IOException("broken AVIF", e);
+        }
+    }
+
+    /** Parses the top level boxes. */
+    private static AvifInfo parseBoxes(Source source) throws IOException {
+        AvifInfo info = new AvifInfo();
+        Meta meta = null;
+        ByteBuffer moov = null;
+        long offset = 0;
+        boolean first = true;
+        while (true) {
+            ByteBuffer h = source.read(offset, 16);
+            if (h.remaining() < 8) {
+                break;
+            }
+            long size = h.getInt() & 0xffffffffL;
+            String type = fourcc(h);
+            int headerSize = 8;
+            if (size == 1) {
+                if (h.remaining() < 8) {
+                    throw new IOException("Box[" + type + "] is truncated");
+                }
+                size = h.getLong();
+                headerSize = 16;
+            }
+            if (first && !type.equals("ftyp")) {
+                throw new IOException("not an AVIF, no ftyp");
+            }
+            first = false;
+            if (size != 0 && size < headerSize) {
+                throw new IOException("Box[" + type + "] has an invalid size: " + size);
+            }
+            switch (type) {
+            case "ftyp", "meta", "moov" -> {
+                long bodySize = size == 0 ? MAX_BOX_SIZE : size - headerSize;
+                if (bodySize > MAX_BOX_SIZE) {
+                    throw new IOException("Box[" + type + "] is too large: " + size);
+                }
+                ByteBuffer body = source.read(offset + headerSize, (int) bodySize);
+                if (size != 0 && body.remaining() < bodySize) {
+                    throw new IOException("Box[" + type + "] is truncated");
+                }
+                switch (type) {
+                case "ftyp" -> parseFileTypeBox(info, body);
+                case "meta" -> meta = parseMetaBox(body);
+                case "moov" -> moov = body;
+                }
+            }
+            default -> {}
+            }
+            if (size == 0) {
+                break; // the last box
+            }
+            offset += size;
+        }
+        if (info.majorBrand == null) {
+            throw new IOException("not an AVIF, no ftyp");
+        }
+        if (meta != null) {
+            fill(info, meta, source);
+        }
+        if (moov != null) {
+            parseMovieBox(info, moov);
+        }
+logger.log(Level.TRACE, info);
+        return info;
+    }
+
+    /** Box[ftyp] */
+    private static void parseFileTypeBox(AvifInfo info, ByteBuffer b) throws IOException {
+        if (b.remaining() < 8) {
+            throw new IOException("Box[ftyp] is truncated");
+        }
+        info.majorBrand = fourcc(b);
+        b.getInt(); // minor version
+        while (b.remaining() >= 4) {
+            info.compatibleBrands.add(fourcc(b));
+        }
+    }
+
+    /** Box[meta] */
+    private static Meta parseMetaBox(ByteBuffer b) throws IOException {
+        Meta meta = new Meta();
+        readVersionAndFlags(b);
+        forEachBox(b, (type, body) -> {
+            switch (type) {
+            case "pitm" -> meta.primaryItemId = readVersionAndFlags(body) >>> 24 == 0 ? body.getShort() & 0xffff : body.getInt();
+            case "iloc" -> parseItemLocationBox(meta, body);
+            case "iinf" -> parseItemInfoBox(meta, body);
+            case "iref" -> parseItemReferenceBox(meta, body);
+            case "iprp" -> parseItemPropertiesBox(meta, body);
+            case "idat" -> meta.idat = body;
+            default -> {}
+            }
+        });
+        return meta;
+    }
+
+    /** Box[iloc] */
+    private static void parseItemLocationBox(Meta meta, ByteBuffer b) throws IOException {
+        int version = readVersionAndFlags(b) >>> 24;
+        if (version > 2) {
+            throw new IOException("Box[iloc] has an unsupported version " + version);
+        }
+        int offsetSizeAndLengthSize = b.get() & 0xff;
+        int offsetSize = (offsetSizeAndLengthSize >> 4) & 0xf;
+        int lengthSize = offsetSizeAndLengthSize & 0xf;
+        int baseOffsetSizeAndIndexSize = b.get() & 0xff;
+        int baseOffsetSize = (baseOffsetSizeAndIndexSize >> 4) & 0xf;
+        int indexSize = version == 1 || version == 2 ? baseOffsetSizeAndIndexSize & 0xf : 0;
+        int itemCount = version < 2 ? b.getShort() & 0xffff : b.getInt();
+        for (int i = 0; i < itemCount; i++) {
+            int itemId = version < 2 ? b.getShort() & 0xffff : b.getInt();
+            int constructionMethod = 0;
+            if (version == 1 || version == 2) {
+                constructionMethod = b.getShort() & 0xf;
+            }
+            b.getShort(); // data reference index
+            long baseOffset = readUnsigned(b, baseOffsetSize);
+            int extentCount = b.getShort() & 0xffff;
+            long[] offsets = new long[extentCount];
+            long[] lengths = new long[extentCount];
+            for (int j = 0; j < extentCount; j++) {
+                readUnsigned(b, indexSize); // extent index
+                offsets[j] = baseOffset + readUnsigned(b, offsetSize);
+                lengths[j] = readUnsigned(b, lengthSize);
+            }
+            meta.locations.put(itemId, new Location(constructionMethod, offsets, lengths));
+        }
+    }
+
+    /** Box[iinf] */
+    private static void parseItemInfoBox(Meta meta, ByteBuffer b) throws IOException {
+        int version = readVersionAndFlags(b) >>> 24;
+        if (version == 0) {
+            b.getShort(); // entry count
+        } else {
+            b.getInt();
+        }
+        forEachBox(b, (type, body) -> {
+            if (!type.equals("infe")) {
+                return;
+            }
+            int v = readVersionAndFlags(body) >>> 24;
+            if (v != 2 && v != 3) {
+                throw new IOException("Box[infe] has an unsupported version " + v);
+            }
+            int itemId = v == 2 ? body.getShort() & 0xffff : body.getInt();
+            body.getShort(); // protection index
+            Item item = meta.item(itemId);
+            item.type = fourcc(body);
+            readString(body); // name
+            if (item.type.equals("mime")) {
+                item.contentType = readString(body);
+            }
+        });
+    }
+
+    /** Box[iref] */
+    private static void parseItemReferenceBox(Meta meta, ByteBuffer b) throws IOException {
+        int version = readVersionAndFlags(b) >>> 24;
+        forEachBox(b, (type, body) -> {
+            int fromId = version == 0 ? body.getShort() & 0xffff : body.getInt();
+            int count = body.getShort() & 0xffff;
+            List<Integer> to = meta.item(fromId).references.computeIfAbsent(type, k -> new ArrayList<>());
+            for (int i = 0; i < count; i++) {
+                to.add(version == 0 ? body.getShort() & 0xffff : body.getInt());
+            }
+        });
+    }
+
+    /** Box[iprp] */
+    private static void parseItemPropertiesBox(Meta meta, ByteBuffer b) throws IOException {
+        forEachBox(b, (type, body) -> {
+            switch (type) {
+            case "ipco" -> forEachBox(body, (t, p) -> meta.properties.add(new Property(t, p)));
+            case "ipma" -> {
+                int versionAndFlags = readVersionAndFlags(body);
+                int version = versionAndFlags >>> 24;
+                boolean large = (versionAndFlags & 1) != 0;
+                int entryCount = body.getInt();
+                for (int i = 0; i < entryCount; i++) {
+                    int itemId = version < 1 ? body.getShort() & 0xffff : body.getInt();
+                    int associationCount = body.get() & 0xff;
+                    Item item = meta.item(itemId);
+                    for (int j = 0; j < associationCount; j++) {
+                        // the essential bit is ignored
+                        item.properties.add(large ? body.getShort() & 0x7fff : body.get() & 0x7f);
+                    }
+                }
+            }
+            default -> {}
+            }
+        });
+    }
+
+    /** Gets values of the primary item. */
+    private static void fill(AvifInfo info, Meta meta, Source source) throws IOException {
+        int primary = meta.primaryItemId;
+        info.primaryItemId = primary;
+        Item primaryItem = meta.items.get(primary);
+        if (primaryItem == null) {
+            throw new IOException("primary item " + primary + " is not found");
+        }
+
+        // the first tile has the codec configuration of a grid
+        int colorItem = primary;
+        if (primaryItem.type.equals("grid")) {
+            List<Integer> tiles = primaryItem.references.get("dimg");
+            if (tiles != null && !tiles.isEmpty()) {
+                colorItem = tiles.get(0);
+            }
+            ByteBuffer grid = itemData(meta, primary, source);
+            if (grid != null && grid.remaining() >= 8) {
+                grid.get(); // version
+                int flags = grid.get() & 0xff;
+                info.gridRows = (grid.get() & 0xff) + 1;
+                info.gridColumns = (grid.get() & 0xff) + 1;
+                if ((flags & 1) == 0) {
+                    info.width = grid.getShort() & 0xffff;
+                    info.height = grid.getShort() & 0xffff;
+                } else if (grid.remaining() >= 8) {
+                    info.width = grid.getInt();
+                    info.height = grid.getInt();
+                }
+            }
+        }
+
+        ByteBuffer ispe = meta.property(primary, "ispe");
+        if (ispe != null && info.width == 0) {
+            readVersionAndFlags(ispe);
+            info.width = ispe.getInt();
+            info.height = ispe.getInt();
+        }
+
+        ByteBuffer av1C = meta.property(colorItem, "av1C");
+        if (av1C != null && av1C.remaining() >= 3) {
+            av1C.getShort(); // marker, version, profile, level
+            int flags = av1C.get() & 0xff;
+            boolean highBitdepth = (flags & 0x40) != 0;
+            boolean twelveBit = (flags & 0x20) != 0;
+            boolean monochrome = (flags & 0x10) != 0;
+            boolean subsamplingX = (flags & 0x08) != 0;
+            boolean subsamplingY = (flags & 0x04) != 0;
+            info.depth = twelveBit ? 12 : highBitdepth ? 10 : 8;
+            info.yuvFormat = monochrome ? AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV400 :
+                    subsamplingX && subsamplingY ? AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420 :
+                    subsamplingX ? AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV422 :
+                    AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV444;
+        } else {
+            ByteBuffer pixi = meta.property(colorItem, "pixi");
+            if (pixi != null) {
+                readVersionAndFlags(pixi);
+                if ((pixi.get() & 0xff) > 0) {
+                    info.depth = pixi.get() & 0xff;
+                }
+            }
+        }
+
+        ByteBuffer colr = meta.property(primary, "colr");
+        if (colr == null) {
+            colr = meta.property(colorItem, "colr");
+        }
+        if (colr != null) {
+            String colorType = fourcc(colr);
+            if (colorType.equals("nclx")) {
+                info.colorPrimaries = colr.getShort() & 0xffff;
+                info.transferCharacteristics = colr.getShort() & 0xffff;
+                info.matrixCoefficients = colr.getShort() & 0xffff;
+                info.fullRange = (colr.get() & 0x80) != 0;
+            } else if (colorType.equals("prof") || colorType.equals("rICC")) {
+                info.icc = new byte[colr.remaining()];
+                colr.get(info.icc);
+            }
+        }
+
+        ByteBuffer irot = meta.property(primary, "irot");
+        if (irot != null) {
+            info.rotation = irot.get() & 0x3;
+        }
+        ByteBuffer imir = meta.property(primary, "imir");
+        if (imir != null) {
+            info.mirrorAxis = imir.get() & 0x1;
+        }
+        ByteBuffer clap = meta.property(primary, "clap");
+        if (clap != null && clap.remaining() >= 32) {
+            info.clap = new int[8];
+            for (int i = 0; i < 8; i++) {
+                info.clap[i] = clap.getInt();
+            }
+        }
+
+        for (Map.Entry<Integer, Item> e : meta.items.entrySet()) {
+            int id = e.getKey();
+            Item item = e.getValue();
+            if (refers(item, "auxl", primary)) {
+                ByteBuffer auxC = meta.property(id, "auxC");
+                if (auxC != null) {
+                    readVersionAndFlags(auxC);
+                    if (ALPHA_URNS.contains(readString(auxC))) {
+                        info.alpha = true;
+                        info.alphaPremultiplied = refers(primaryItem, "prem", id);
+                    }
+                }
+            }
+            if (refers(item, "thmb", primary)) {
+                info.thumbnailItemIds.add(id);
+            }
+            if (refers(item, "cdsc", primary)) {
+                if (item.type.equals("Exif")) {
+                    info.exif = true;
+                } else if (item.type.equals("mime") && item.contentType.equals("application/rdf+xml")) {
+                    info.xmp = true;
+                }
+            }
+        }
+        info.thumbnailItemIds.sort(null);
+    }
+
+    /** @return true if the item refers the item by the reference type */
+    private static boolean refers(Item item, String referenceType, int to) {
+        List<Integer> ids = item.references.get(referenceType);
+        return ids != null && ids.contains(to);
+    }
+
+    /** @return data of the item, null if the location is unknown */
+    private static ByteBuffer itemData(Meta meta, int itemId, Source source) throws IOException {
+        Location location = meta.locations.get(itemId);
+        if (location == null || location.offsets.length == 0) {
+            return null;
+        }
+        long total = 0;
+        for (int i = 0; i < location.offsets.length; i++) {
+            if (location.offsets[i] < 0 || location.lengths[i] < 0 || location.lengths[i] > MAX_BOX_SIZE) {
+                throw new IOException("item " + itemId + " has an invalid extent: " + location.offsets[i] + ", " + location.lengths[i]);
+            }
+            total += location.lengths[i];
+        }
+        if (total > MAX_BOX_SIZE) {
+            throw new IOException("item " + itemId + " is too large: " + total);
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) total);
+        for (int i = 0; i < location.offsets.length; i++) {
+            ByteBuffer extent;
+            if (location.constructionMethod == 1) {
+                if (meta.idat == null || location.offsets[i] + location.lengths[i] > meta.idat.limit()) {
+                    throw new IOException("item " + itemId + " is out of idat");
+                }
+                extent = meta.idat.slice((int) location.offsets[i], (int) location.lengths[i]);
+            } else {
+                extent = source.read(location.offsets[i], (int) location.lengths[i]);
+                if (extent.remaining() < location.lengths[i]) {
+                    throw new IOException("item " + itemId + " is out of the file");
+                }
+            }
+            data.put(extent);
+        }
+        return data.flip();
+    }
+
+    /**
+     * Box[moov], gets samples of the first color track and whether an auxiliary track exists.
+     * an auxiliary track of av01 is taken as the alpha, the same as libavif 1.0 does.
+     * the dimensions of the color track are used when meta doesn't give them.
+     */
+    private static void parseMovieBox(AvifInfo info, ByteBuffer b) throws IOException {
+        int[] frameCount = new int[1];
+        int[] colorSize = new int[2];
+        boolean[] colorPremultiplied = new boolean[1];
+        forEachBox(b, (type, trak) -> {
+            if (!type.equals("trak")) {
+                return;
+            }
+            boolean[] auxiliary = new boolean[1];
+            boolean[] premultiplied = new boolean[1];
+            boolean[] picture = new boolean[1];
+            int[] samples = new int[1];
+            // tkhd, or the sample entry when tkhd has none
+            int[] trackSize = new int[2];
+            int[] entrySize = new int[2];
+            forEachBox(trak, (t, body) -> {
+                switch (t) {
+                case "tkhd" -> {
+                    int version = readVersionAndFlags(body) >>> 24;
+                    body.position(body.position() + (version == 1 ? 32 : 20)); // times, track id and duration
+                    body.position(body.position() + 52); // layer, volume, matrix etc.
+                    trackSize[0] = body.getInt() >>> 16; // 16.16 fixed point
+                    trackSize[1] = body.getInt() >>> 16;
+                }
+                case "tref" -> forEachBox(body, (r, ref) -> {
+                    auxiliary[0] |= r.equals("auxl");
+                    premultiplied[0] |= r.equals("prem");
+                });
+                case "mdia" -> forEachBox(body, (m, mdia) -> {
+                    switch (m) {
+                    case "hdlr" -> {
+                        readVersionAndFlags(mdia);
+                        mdia.getInt(); // pre defined
+                        String handler = fourcc(mdia);
+                        picture[0] = handler.equals("pict") || handler.equals("auxv");
+                    }
+                    case "minf" -> forEachBox(mdia, (n, minf) -> {
+                        if (n.equals("stbl")) {
+                            forEachBox(minf, (s, stbl) -> {
+                                if (s.equals("stsz")) {
+                                    readVersionAndFlags(stbl);
+                                    stbl.getInt(); // sample size
+                                    samples[0] = stbl.getInt();
+                                } else if (s.equals("stsd")) {
+                                    readVersionAndFlags(stbl);
+                                    stbl.getInt(); // entry count
+                                    forEachBox(stbl, (e, entry) -> {
+                                        if (e.equals("av01") && entrySize[0] == 0) {
+                                            entry.position(24); // sample entry and visual sample entry fields
+                                            entrySize[0] = entry.getShort() & 0xffff;
+                                            entrySize[1] = entry.getShort() & 0xffff;
+                                        }
+                                    });
+                                }
+                            });
+                        }
+                    });
+                    default -> {}
+                    }
+                });
+                default -> {}
+                }
+            });
+            if (!picture[0]) {
+                return;
+            }
+            if (auxiliary[0]) {
+                info.alpha = true;
+            } else if (frameCount[0] == 0) {
+                frameCount[0] = samples[0];
+                colorPremultiplied[0] = premultiplied[0];
+                int[] size = trackSize[0] != 0 && trackSize[1] != 0 ? trackSize : entrySize;
+                colorSize[0] = size[0];
+                colorSize[1] = size[1];
+            }
+        });
+        if (frameCount[0] > 0) {
+            info.frameCount = frameCount[0];
+        }
+        if (info.width == 0 || info.height == 0) {
+            info.width = colorSize[0];
+            info.height = colorSize[1];
+        }
+        if (info.alpha) {
+            info.alphaPremultiplied |= colorPremultiplied[0];
+        }
+    }
+
+    /** a child box */
+    @FunctionalInterface
+    private interface BoxHandler {
+        void handle(String type, ByteBuffer body) throws IOException;
+    }
+
+    /** Iterates child boxes, each body is a slice. */
+    private static void forEachBox(ByteBuffer b, BoxHandler handler) throws IOException {
+        while (b.remaining() >= 8) {
+            int start = b.position();
+            long size = b.getInt() & 0xffffffffL;
+            String type = fourcc(b);
+            if (size == 1) {
+                size = b.getLong();
+            } else if (size == 0) {
+                size = b.limit() - start;
+            }
+            if (type.equals("uuid")) {
+                b.position(b.position() + 16);
+            }
+            int headerSize = b.position() - start;
+            if (size < headerSize || size > b.limit() - start) {
+                throw new IOException("Box[" + type + "] is truncated");
+            }
+            int end = (int) (start + size);
+            ByteBuffer body = b.slice(b.position(), end - b.position()).order(ByteOrder.BIG_ENDIAN);
+            try {
+                handler.handle(type, body);
+            } catch (RuntimeException e) { // BufferUnderflowException etc.
+                throw new IOException("Box[" + type + "] is broken", e);
+            }
+            b.position(end);
+        }
+    }
+
+    /** @return version (8 bits) and flags (24 bits) of a full box */
+    private static int readVersionAndFlags(ByteBuffer b) {
+        return b.getInt();
+    }
+
+    /** @return 0, 4 or 8 bytes unsigned integer */
+    private static long readUnsigned(ByteBuffer b, int size) throws IOException {
+        return switch (size) {
+            case 0 -> 0;
+            case 4 -> b.getInt() & 0xffffffffL;
+            case 8 -> b.getLong();
+            default -> throw new IOException("unsupported field size " + size);
+        };
+    }
+
+    /** @return a null terminated string */
+    private static String readString(ByteBuffer b) {
+        int start = b.position();
+        while (b.hasRemaining() && b.get() != 0) {
+            // skip
+        }
+        int end = b.position() - (b.position() > start && b.get(b.position() - 1) == 0 ? 1 : 0);
+        byte[] bytes = new byte[end - start];
+        b.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** @return a four character code */
+    private static String fourcc(ByteBuffer b) {
+        byte[] bytes = new byte[4];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
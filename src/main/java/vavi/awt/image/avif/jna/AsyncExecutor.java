@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+
+/**
+ * A bounded executor for the asynchronous api.
+ * <p>
+ * When the queue is full, a task is not queued and its future completes
+ * exceptionally with {@link RejectedExecutionException} at once, so that
+ * callers on an event loop are never blocked. A task which is cancelled
+ * before it starts is removed from the queue and never calls native code.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.async.queueSize} ... max waiting tasks, default is 4 times of the threads</li>
+ * </ul>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+final class AsyncExecutor {
+
+    /** */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads number of worker threads
+     */
+    AsyncExecutor(int threads) {
+        this(threads, Integer.getInteger("vavi.awt.image.avif.async.queueSize", threads * 4));
+    }
+
+    /**
+     * @param threads number of worker threads
+     * @param queueSize max waiting tasks
+     */
+    AsyncExecutor(int threads, int queueSize) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "avif-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueSize, 1)),
+                factory,
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task asynchronously.
+     *
+     * @return a future, cancelling it before the task starts drops the task.
+     *         it completes exceptionally with {@link RejectedExecutionException} when the queue is full.
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            if (future.isDone()) {
+                return; // cancelled before the native call starts
+            }
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+        try {
+            executor.execute(runnable);
+            future.whenComplete((r, t) -> {
+                if (future.isCancelled()) {
+                    executor.remove(runnable);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
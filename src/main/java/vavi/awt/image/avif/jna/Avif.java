@@ -4,16 +4,43 @@
 package vavi.awt.image.avif.jna;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.lang.ref.Reference;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
+import com.sun.jna.Memory;
 import com.sun.jna.Native;
-import com.sun.jna.NativeLong;
 import com.sun.jna.Pointer;
 import org.apache.maven.artifact.versioning.ComparableVersion;
+import vavi.awt.image.jna.avif.AvifDirect;
 import vavi.awt.image.jna.avif.AvifLibrary;
+import vavi.awt.image.jna.avif.avifCropRect;
 import vavi.awt.image.jna.avif.avifDecoder;
 import vavi.awt.image.jna.avif.avifEncoder;
 import vavi.awt.image.jna.avif.avifImage;
@@ -26,6 +53,16 @@ import static java.lang.System.getLogger;
 
 /**
  * An AVIF Decoder.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.threads} ... the thread budget for native codecs and the asynchronous api, default is number of processors</li>
+ *  <li>{@code vavi.awt.image.avif.yuvToRgb} ... "java" to convert colors by {@link YuvToRgb} instead of libavif when {@link DecodeOptions} asks for the fastest or nearest chroma upsampling, default "native"</li>
+ *  <li>{@code vavi.awt.image.avif.cache.*} ... see {@link DecodedImageCache}</li>
+ *  <li>{@code vavi.awt.image.avif.codec.decode} ... codec name for decoding, e.g. "dav1d", "libgav1", "aom", default "auto"</li>
+ *  <li>{@code vavi.awt.image.avif.codec.encode} ... codec name for encoding, e.g. "aom", "rav1e", "svt", default "auto"</li>
+ *  <li>{@code vavi.awt.image.avif.sizeSearch.parallelism} ... candidates encoded at once by {@link #encodeToSize}, default 4</li>
+ * </ul>
  *
  * @see "AVIF Specification: https://aomediacodec.github.io/av1-avif/."
  */
@@ -33,8 +70,58 @@ public class Avif {
 
     private static final Logger logger = getLogger(Avif.class.getName());
 
+    /** the thread budget */
+    private static final int threads = Math.max(1, Integer.getInteger("vavi.awt.image.avif.threads", Runtime.getRuntime().availableProcessors()));
+
+    /** java color converter, null for libavif's one */
+    private static final YuvToRgb yuvToRgb = "java".equals(System.getProperty("vavi.awt.image.avif.yuvToRgb")) ? YuvToRgb.getInstance() : null;
+
+
+    /** default codec for decoding, {@link AvifLibrary.avifCodecChoice} */
+    private static final int decodeCodec = defaultCodec("vavi.awt.image.avif.codec.decode", AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_DECODE);
+
+    /** default codec for encoding, {@link AvifLibrary.avifCodecChoice} */
+    private static final int encodeCodec = defaultCodec("vavi.awt.image.avif.codec.encode", AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_ENCODE);
+
+    /** candidates encoded at once by {@link #encodeToSize} */
+    private static final int sizeSearchParallelism = Integer.getInteger("vavi.awt.image.avif.sizeSearch.parallelism", 4);
+
+    /** never modified */
+    private static final DecodeOptions defaultOptions = new DecodeOptions();
+
+    /** */
+    private static final EncodeOptions defaultEncodeOptions = new EncodeOptions();
+
     private static final Avif avif = new Avif();
 
+    /** reusable decoders */
+    private final DecoderPool decoderPool = new DecoderPool();
+
+
+    /** limits concurrent native calls */
+    private final NativeGate gate = new NativeGate();
+
+    /** splits color conversions */
+    private final BandConverter bands = new BandConverter();
+
+    /** for the asynchronous api */
+    private final AsyncExecutor asyncExecutor = new AsyncExecutor(threads);
+
+    /** encodes the candidates of {@link #encodeToSize}, threads are started on demand and stop when idle */
+    private final ThreadPoolExecutor sizeSearchExecutor = newExecutor("avif-size-search-", Math.min(sizeSearchParallelism, threads));
+
+    /** prefetches the sources of {@link #decodeAll}, threads are started on demand and stop when idle */
+    private final ThreadPoolExecutor batchIoExecutor = newExecutor("avif-batch-io-", Integer.getInteger("vavi.awt.image.avif.batch.ioThreads", 2));
+
+    /** decodes the sources of {@link #decodeAll}, threads are started on demand and stop when idle */
+    private final ThreadPoolExecutor batchDecodeExecutor = newExecutor("avif-batch-decode-", threads);
+
+    /** converts colors of the sources of {@link #decodeAll}, threads are started on demand and stop when idle */
+    private final ThreadPoolExecutor batchConvertExecutor = newExecutor("avif-batch-convert-", threads);
+
+    /** decoded images, disabled by default */
+    private final DecodedImageCache cache = new DecodedImageCache();
+
     // This is a utility class and cannot be instantiated.
     private Avif() {
         String version = AvifLibrary.INSTANCE.avifVersion();
@@ -51,6 +138,70 @@ logger.log(Level.DEBUG, "libavif version: " + version);
         return avif;
     }
 
+    /**
+     * @return versions of the codecs which libavif is built with, e.g. "dav1d [dec]:1.2.1, aom [enc/dec]:3.8.0"
+     */
+    public static String getCodecVersions() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        AvifLibrary.INSTANCE.avifCodecVersions(buffer);
+        int length = 0;
+        while (length < buffer.capacity() && buffer.get(length) != 0) {
+            length++;
+        }
+        return new String(buffer.array(), 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param codecChoice {@link AvifLibrary.avifCodecChoice}
+     * @param flags {@link AvifLibrary.avifCodecFlag}, e.g. {@link AvifLibrary.avifCodecFlag#AVIF_CODEC_FLAG_CAN_DECODE}
+     * @return the name of the codec, null when the codec is not available for the flags
+     */
+    public static String getCodecName(int codecChoice, int flags) {
+        return AvifLibrary.INSTANCE.avifCodecName(codecChoice, flags);
+    }
+
+    /**
+     * @param name the codec name, e.g. "dav1d", "aom", "rav1e", "svt", "auto"
+     * @param flags {@link AvifLibrary.avifCodecFlag}, e.g. {@link AvifLibrary.avifCodecFlag#AVIF_CODEC_FLAG_CAN_ENCODE}
+     * @return {@link AvifLibrary.avifCodecChoice}
+     * @throws IllegalArgumentException when the codec is not available for the flags
+     */
+    public static int getCodecChoice(String name, int flags) {
+        if ("auto".equalsIgnoreCase(name)) {
+            return AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO;
+        }
+        // libavif answers auto for a codec which is not built in
+        int codecChoice = AvifLibrary.INSTANCE.avifCodecChoiceFromName(name.toLowerCase());
+        if (codecChoice == AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO || getCodecName(codecChoice, flags) == null) {
+            throw new IllegalArgumentException(String.format("codec %s is not available, available: %s", name, getCodecVersions()));
+        }
+        return codecChoice;
+    }
+
+    /** @return the codec choice by the system property, auto when it's not available */
+    private static int defaultCodec(String key, int flags) {
+        String name = System.getProperty(key);
+        if (name == null) {
+            return AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO;
+        }
+        try {
+            return getCodecChoice(name, flags);
+        } catch (IllegalArgumentException e) {
+logger.log(Level.WARNING, key + ": " + e.getMessage());
+            return AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO;
+        }
+    }
+
+    /**
+     * Gets the cache of decoded images in front of {@link #decode(ByteBuffer, int)}
+     * and {@link #decodeFrame(ByteBuffer, int, int)}.
+     *
+     * @see DecodedImageCache
+     */
+    public DecodedImageCache getCache() {
+        return cache;
+    }
+
     /**
      * Returns true if the bytes in the buffer seem like an AVIF image.
      *
@@ -73,42 +224,54 @@ logger.log(Level.DEBUG, "libavif version: " + version);
      */
     public BufferedImage getCompatibleImage(ByteBuffer encoded, int length) {
         Pointer buffer = Native.getDirectBufferPointer(encoded);
-        avifDecoder decoder = createDecoderAndParse(buffer, length, Runtime.getRuntime().availableProcessors());
-        BufferedImage image = new BufferedImage(decoder.image.width, decoder.image.height, BufferedImage.TYPE_4BYTE_ABGR);
+        return gate.call(() -> {
+            avifDecoder decoder = createDecoderAndParse(buffer, length, threads);
+            try {
+                BufferedImage image = new BufferedImage(decoder.image.width, decoder.image.height, compatibleType(decoder));
 logger.log(Level.TRACE,"image depth: " + decoder.image.depth);
-        return image;
+                return image;
+            } finally {
+                decoderPool.release(decoder);
+            }
+        });
     }
 
+    /**
+     * Gets a decoder from the pool and parses the encoded image.
+     * the decoder must be returned by {@link DecoderPool#release(avifDecoder)}.
+     */
     private avifDecoder createDecoderAndParse(Pointer buffer, int length, int threads) {
-        avifDecoder decoder = AvifLibrary.INSTANCE.avifDecoderCreate();
-        if (decoder == null) {
-            throw new IllegalStateException("Failed to create AVIF Decoder.");
-        }
-        decoder.maxThreads = threads;
-        decoder.ignoreXMP = AvifLibrary.AVIF_TRUE;
-        decoder.ignoreExif = AvifLibrary.AVIF_TRUE;
-
-        // Turn off 'clap' (clean aperture) property validation. The JNI wrapper
-        // ignores the 'clap' property.
-        decoder.strictFlags &= ~AvifLibrary.avifStrictFlag.AVIF_STRICT_CLAP_VALID;
-        // Allow 'pixi' (pixel information) property to be missing. Older versions of
-        // libheif did not add the 'pixi' item property to AV1 image items (See
-        // crbug.com/1198455).
-        decoder.strictFlags &= ~AvifLibrary.avifStrictFlag.AVIF_STRICT_PIXI_REQUIRED;
-
-        int res = AvifLibrary.INSTANCE.avifDecoderSetIOMemory(decoder, buffer, new NativeLong(length));
-        if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
-            throw new IllegalStateException("Failed to set AVIF IO to a memory reader.");
-        }
-        res = AvifLibrary.INSTANCE.avifDecoderParse(decoder);
+        return createDecoderAndParse(buffer, length, decodeCodec, threads);
+    }
+
+    /**
+     * Gets a decoder of the codec from the pool and parses the encoded image.
+     *
+     * @param codecChoice {@link AvifLibrary.avifCodecChoice}
+     */
+    private avifDecoder createDecoderAndParse(Pointer buffer, int length, int codecChoice, int threads) {
+        avifDecoder decoder = decoderPool.acquire(codecChoice, threads, buffer, length);
+        int res = AvifDirect.avifDecoderParse(decoder.getPointer());
         if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+            decoderPool.release(decoder);
             throw new IllegalStateException(String.format("Failed to parse AVIF image: %s.", AvifLibrary.INSTANCE.avifResultToString(res)));
         }
+        // only the fields used after parsing, parsing replaces the image
+        decoder.readField("image");
+        decoder.readField("alphaPresent");
+        decoder.readField("imageCount");
+        // the image is owned by libavif, never written from java
+        decoder.image.setAutoWrite(false);
         return decoder;
     }
 
     /**
      * Decodes the AVIF image into the bitmap.
+     * <p>
+     * supported types are {@link BufferedImage#TYPE_4BYTE_ABGR}, {@link BufferedImage#TYPE_3BYTE_BGR},
+     * {@link BufferedImage#TYPE_INT_RGB}, {@link BufferedImage#TYPE_INT_ARGB},
+     * {@link BufferedImage#TYPE_USHORT_565_RGB} and the premultiplied ones
+     * {@link BufferedImage#TYPE_4BYTE_ABGR_PRE}, {@link BufferedImage#TYPE_INT_ARGB_PRE}.
      *
      * @param encoded The encoded AVIF image. encoded.position() must be 0.
      * @param length  Length of the encoded buffer.
@@ -117,11 +280,372 @@ logger.log(Level.TRACE,"image depth: " + decoder.image.depth);
      */
     public BufferedImage decode(ByteBuffer encoded, int length, BufferedImage bitmap) {
         Pointer buffer = Native.getDirectBufferPointer(encoded);
-        avifDecoder decoder = createDecoderAndParse(buffer, length, Runtime.getRuntime().availableProcessors());
-        int res = AvifLibrary.INSTANCE.avifDecoderNextImage(decoder);
+        return gate.call(() -> {
+            avifDecoder decoder = createDecoderAndParse(buffer, length, threads);
+            try {
+                return decode(decoder, bitmap);
+            } finally {
+                decoderPool.release(decoder);
+            }
+        });
+    }
+
+    /**
+     * Decodes the AVIF image into a new compatible image, the header is parsed only once.
+     * the result may come from the {@link #getCache() cache}.
+     *
+     * @param encoded The encoded AVIF image. encoded.position() must be 0.
+     * @param length  Length of the encoded buffer.
+     * @return the decoded image.
+     */
+    public BufferedImage decode(ByteBuffer encoded, int length) {
+        return cache.get(encoded, length, "frame=0", () -> decode(encoded, length, threads));
+    }
+
+    /**
+     * Decodes the AVIF file without java side buffering.
+     * the file is mapped read-only and the mapped memory is passed to libavif directly.
+     *
+     * @param path the AVIF file
+     * @return the decoded image.
+     * @throws IOException when the file cannot be mapped
+     */
+    public BufferedImage decode(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer mapped = map(channel, 0);
+            return decode(mapped, mapped.capacity());
+        }
+    }
+
+    /**
+     * Maps the rest of the channel read-only.
+     *
+     * @param position the start position in the channel
+     * @throws IOException when the size exceeds 2GB or mapping is failed
+     */
+    public static ByteBuffer map(FileChannel channel, long position) throws IOException {
+        long size = channel.size() - position;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("too large to map: " + size);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    /**
+     * Decodes the AVIF image into a new compatible image.
+     *
+     * @param threads the number of native codec threads
+     */
+    BufferedImage decode(ByteBuffer encoded, int length, int threads) {
+        Pointer buffer = Native.getDirectBufferPointer(encoded);
+        return gate.call(() -> {
+            avifDecoder decoder = createDecoderAndParse(buffer, length, threads);
+            try {
+                BufferedImage bitmap = new BufferedImage(decoder.image.width, decoder.image.height, compatibleType(decoder));
+                return decode(decoder, bitmap);
+            } finally {
+                decoderPool.release(decoder);
+            }
+        });
+    }
+
+    /**
+     * Parses and decodes the first image without color conversion, so that colors are
+     * converted in another stage of a pipeline. the decoder must be passed to {@link #convert(avifDecoder)}.
+     *
+     * @param threads the number of native codec threads
+     */
+    avifDecoder decodeImage(ByteBuffer encoded, int length, int threads) {
+        Pointer buffer = Native.getDirectBufferPointer(encoded);
+        return gate.call(() -> {
+            avifDecoder decoder = createDecoderAndParse(buffer, length, threads);
+            try {
+                decodeImage(decoder, -1);
+                return decoder;
+            } catch (RuntimeException e) {
+                decoderPool.release(decoder);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Converts colors of the image decoded by {@link #decodeImage(ByteBuffer, int, int)}
+     * into a new compatible image, and returns the decoder to the pool.
+     */
+    BufferedImage convert(avifDecoder decoder) {
+        return gate.call(() -> {
+            try {
+                BufferedImage bitmap = new BufferedImage(decoder.image.width, decoder.image.height, compatibleType(decoder));
+                return convert(decoder, bitmap, defaultOptions);
+            } finally {
+                decoderPool.release(decoder);
+            }
+        });
+    }
+
+    /**
+     * Decodes the AVIF image without color conversion.
+     * the decoder session is kept until the result is closed, so close it as soon as
+     * the planes are consumed.
+     *
+     * @param encoded The encoded AVIF image. encoded.position() must be 0.
+     * @param length  Length of the encoded buffer.
+     * @return the decoded planes, must be closed.
+     */
+    public YuvImage decodeYuv(ByteBuffer encoded, int length) {
+        Pointer buffer = Native.getDirectBufferPointer(encoded);
+        return gate.call(() -> {
+            avifDecoder decoder = createDecoderAndParse(buffer, length, threads);
+            try {
+                int res = AvifDirect.avifDecoderNextImage(decoder.getPointer());
+                if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                    throw new IllegalStateException(String.format("Failed to decode AVIF image. Status: %d", res));
+                }
+                decoder.image.read();
+                return new YuvImage(decoder.image, () -> gate.call(() -> {
+                    decoderPool.release(decoder);
+                    return null;
+                }));
+            } catch (RuntimeException e) {
+                decoderPool.release(decoder);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Receives partial results of {@link #decode(InputStream, long, DecodeListener)}.
+     * the image is the one which will be returned, it is called on the decoding thread.
+     */
+    public interface DecodeListener {
+        /** a layer is started, layers is more than 1 for a progressive image */
+        default void layerStarted(BufferedImage image, int layer, int layers) {}
+        /** rows from y0 (inclusive) to y1 (exclusive) of the current layer are ready in the image */
+        default void rowsDecoded(BufferedImage image, int y0, int y1) {}
+        /** a layer is complete, the image is a preview until the last layer */
+        default void layerDecoded(BufferedImage image, int layer, int layers) {}
+    }
+
+    /**
+     * Decodes the AVIF image while the bytes are arriving.
+     * <p>
+     * Decoded rows and progressive layers are notified to the listener before the
+     * whole stream is received. the stream is read on the calling thread, native
+     * calls are gated one by one, so that waiting for the stream doesn't hold the gate.
+     *
+     * @param in the encoded AVIF image, not closed
+     * @param sizeHint total bytes of the stream, 0 if unknown
+     * @return the decoded image.
+     * @throws IOException when the stream is failed
+     */
+    public BufferedImage decode(InputStream in, long sizeHint, DecodeListener listener) throws IOException {
+        StreamIO io = new StreamIO(in, sizeHint);
+        avifDecoder decoder = gate.call(() -> DecoderPool.create(decodeCodec, threads));
+        try {
+            decoder.allowIncremental = AvifLibrary.AVIF_TRUE;
+            decoder.allowProgressive = AvifLibrary.AVIF_TRUE;
+            decoder.writeField("allowIncremental");
+            decoder.writeField("allowProgressive");
+            gate.call(() -> {
+                AvifLibrary.INSTANCE.avifDecoderSetIO(decoder, io.io);
+                return null;
+            });
+
+            int res;
+            while ((res = gate.call(() -> AvifLibrary.INSTANCE.avifDecoderParse(decoder))) == AvifLibrary.avifResult.AVIF_RESULT_WAITING_ON_IO) {
+                io.fill();
+            }
+            if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                throw new IllegalStateException(String.format("Failed to parse AVIF image: %s.", AvifLibrary.INSTANCE.avifResultToString(res)));
+            }
+            // the image is owned by libavif, never written from java
+            decoder.image.setAutoWrite(false);
+            int width = decoder.image.width;
+            int height = decoder.image.height;
+            int layers = decoder.progressiveState == AvifLibrary.avifProgressiveState.AVIF_PROGRESSIVE_STATE_ACTIVE ? decoder.imageCount : 1;
+            int chromaShiftY = decoder.image.yuvFormat == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420 ? 1 : 0;
+logger.log(Level.DEBUG, "incremental: " + width + "x" + height + ", layers: " + layers);
+
+            BufferedImage bitmap = new BufferedImage(width, height, compatibleType(decoder));
+            // rows are set as data elements, which are in the band order
+            int bytes = bitmap.getType() == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+            ByteBuffer nativeBuffer = ByteBuffer.allocateDirect(width * height * bytes);
+            avifRGBImage rgb = new avifRGBImage();
+            AvifLibrary.INSTANCE.avifRGBImageSetDefaults(rgb, decoder.image);
+            rgb.format = bytes == 3 ? AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_RGB : AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_RGBA;
+            rgb.depth = 8;
+            rgb.pixels = Native.getDirectBufferPointer(nativeBuffer);
+            rgb.rowBytes = width * bytes;
+            rgb.write();
+
+            for (int layer = 0; layer < layers; layer++) {
+                listener.layerStarted(bitmap, layer, layers);
+                int rows = 0;
+                while ((res = gate.call(() -> AvifDirect.avifDecoderNextImage(decoder.getPointer()))) == AvifLibrary.avifResult.AVIF_RESULT_WAITING_ON_IO) {
+                    int decoded = gate.call(() -> AvifDirect.avifDecoderDecodedRowCount(decoder.getPointer()));
+                    if (decoded > rows) {
+                        convertRows(decoder, rgb, nativeBuffer, bitmap, rows >> chromaShiftY << chromaShiftY, decoded);
+                        listener.rowsDecoded(bitmap, rows, decoded);
+                        rows = decoded;
+                    }
+                    io.fill();
+                }
+                if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                    throw new IllegalStateException(String.format("Failed to decode AVIF image: %s.", AvifLibrary.INSTANCE.avifResultToString(res)));
+                }
+                if (rows < height) {
+                    convertRows(decoder, rgb, nativeBuffer, bitmap, rows >> chromaShiftY << chromaShiftY, height);
+                    listener.rowsDecoded(bitmap, rows, height);
+                }
+                listener.layerDecoded(bitmap, layer, layers);
+            }
+            return bitmap;
+        } finally {
+            gate.call(() -> {
+                AvifLibrary.INSTANCE.avifDecoderDestroy(decoder);
+                return null;
+            });
+            // the io and its callback are used by native code until here
+            Reference.reachabilityFence(io);
+        }
+    }
+
+    /** Converts the decoded rows into the bitmap. */
+    private void convertRows(avifDecoder decoder, avifRGBImage rgb, ByteBuffer nativeBuffer, BufferedImage bitmap, int y0, int y1) {
+        gate.call(() -> {
+            convert(decoder.image.getPointer(), rgb, y0, y1, 0);
+            return null;
+        });
+        byte[] rows = new byte[(y1 - y0) * rgb.rowBytes];
+        nativeBuffer.get(y0 * rgb.rowBytes, rows);
+        bitmap.getRaster().setDataElements(0, y0, bitmap.getWidth(), y1 - y0, rows);
+    }
+
+    /**
+     * Decodes the frame of an image sequence into a new compatible image.
+     * the result may come from the {@link #getCache() cache}.
+     *
+     * @param encoded The encoded AVIF image. encoded.position() must be 0.
+     * @param length  Length of the encoded buffer.
+     * @param frameIndex 0 origin, 0 for a still image
+     * @return the decoded image.
+     */
+    public BufferedImage decodeFrame(ByteBuffer encoded, int length, int frameIndex) {
+        return decodeFrame(encoded, length, frameIndex, null, defaultOptions);
+    }
+
+    /**
+     * Decodes the frame of an image sequence into the bitmap.
+     *
+     * @param encoded The encoded AVIF image. encoded.position() must be 0.
+     * @param length  Length of the encoded buffer.
+     * @param frameIndex 0 origin, 0 for a still image
+     * @param bitmap  The decoded pixels will be copied into the bitmap.
+     * @return the decoded image.
+     * @see #decode(ByteBuffer, int, BufferedImage)
+     */
+    public BufferedImage decodeFrame(ByteBuffer encoded, int length, int frameIndex, BufferedImage bitmap) {
+        return decodeFrame(encoded, length, frameIndex, bitmap, defaultOptions);
+    }
+
+    /**
+     * Decodes the AVIF image into a new compatible image with the options.
+     * the result may come from the {@link #getCache() cache}.
+     *
+     * @param encoded The encoded AVIF image. encoded.position() must be 0.
+     * @param length  Length of the encoded buffer.
+     * @return the decoded image.
+     */
+    public BufferedImage decode(ByteBuffer encoded, int length, DecodeOptions options) {
+        return decodeFrame(encoded, length, 0, null, options);
+    }
+
+    /**
+     * Decodes the frame of an image sequence with the options.
+     *
+     * @param encoded The encoded AVIF image. encoded.position() must be 0.
+     * @param length  Length of the encoded buffer.
+     * @param frameIndex 0 origin, 0 for a still image
+     * @param bitmap  The decoded pixels will be copied into the bitmap, null for a new compatible image
+     *                which may come from the {@link #getCache() cache}.
+     * @return the decoded image.
+     * @see #decode(ByteBuffer, int, BufferedImage)
+     */
+    public BufferedImage decodeFrame(ByteBuffer encoded, int length, int frameIndex, BufferedImage bitmap, DecodeOptions options) {
+        Pointer buffer = Native.getDirectBufferPointer(encoded);
+        int codecChoice = options.getCodecChoice() != AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO ? options.getCodecChoice() : decodeCodec;
+        Supplier<BufferedImage> decode = () -> gate.call(() -> {
+            avifDecoder decoder = createDecoderAndParse(buffer, length, codecChoice, threads);
+            try {
+                if (frameIndex < 0 || frameIndex >= decoder.imageCount) {
+                    throw new IndexOutOfBoundsException(String.format("frame %d of %d", frameIndex, decoder.imageCount));
+                }
+                BufferedImage b = bitmap != null ? bitmap : new BufferedImage(decoder.image.width, decoder.image.height, compatibleType(decoder));
+                return decode(decoder, frameIndex, b, options);
+            } finally {
+                decoderPool.release(decoder);
+            }
+        });
+        return bitmap != null ? decode.get() : cache.get(encoded, length, "frame=" + frameIndex + "," + options, decode);
+    }
+
+    /**
+     * Decodes the AVIF image into a new premultiplied image, for compositing by java2d
+     * without premultiplying at every draw.
+     * {@link BufferedImage#TYPE_4BYTE_ABGR_PRE} for an image with alpha, otherwise
+     * {@link BufferedImage#TYPE_3BYTE_BGR} because premultiplying changes nothing.
+     * the result may come from the {@link #getCache() cache}.
+     *
+     * @param encoded The encoded AVIF image. encoded.position() must be 0.
+     * @param length  Length of the encoded buffer.
+     * @return the decoded image.
+     */
+    public BufferedImage decodePremultiplied(ByteBuffer encoded, int length) {
+        Pointer buffer = Native.getDirectBufferPointer(encoded);
+        return cache.get(encoded, length, "frame=0,premultiplied", () -> gate.call(() -> {
+            avifDecoder decoder = createDecoderAndParse(buffer, length, threads);
+            try {
+                int type = decoder.alphaPresent == AvifLibrary.AVIF_TRUE ? BufferedImage.TYPE_4BYTE_ABGR_PRE : BufferedImage.TYPE_3BYTE_BGR;
+                BufferedImage bitmap = new BufferedImage(decoder.image.width, decoder.image.height, type);
+                return decode(decoder, bitmap);
+            } finally {
+                decoderPool.release(decoder);
+            }
+        }));
+    }
+
+    /** Decodes the next image of the parsed decoder into the bitmap. */
+    private BufferedImage decode(avifDecoder decoder, BufferedImage bitmap) {
+        return decode(decoder, -1, bitmap, defaultOptions);
+    }
+
+    /**
+     * Decodes an image of the parsed decoder into the bitmap.
+     *
+     * @param frameIndex -1 for the next image
+     */
+    private BufferedImage decode(avifDecoder decoder, int frameIndex, BufferedImage bitmap, DecodeOptions options) {
+        decodeImage(decoder, frameIndex);
+        return convert(decoder, bitmap, options);
+    }
+
+    /**
+     * Decodes an image of the parsed decoder without color conversion.
+     *
+     * @param frameIndex -1 for the next image
+     */
+    private static void decodeImage(avifDecoder decoder, int frameIndex) {
+        int res = frameIndex < 0 ? AvifDirect.avifDecoderNextImage(decoder.getPointer()) : AvifDirect.avifDecoderNthImage(decoder.getPointer(), frameIndex);
         if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
             throw new IllegalStateException(String.format("Failed to decode AVIF image. Status: %d", res));
         }
+        decoder.image.readField("width");
+        decoder.image.readField("height");
+    }
+
+    /** Converts colors of the decoded image of the decoder into the bitmap. */
+    private BufferedImage convert(avifDecoder decoder, BufferedImage bitmap, DecodeOptions options) {
         // Ensure that the bitmap is large enough to store the decoded image.
         if (bitmap.getWidth() < decoder.image.width ||
                 bitmap.getHeight() < decoder.image.height) {
@@ -130,16 +654,40 @@ logger.log(Level.TRACE,"image depth: " + decoder.image.depth);
                     bitmap.getWidth(), bitmap.getHeight(), decoder.image.width,
                     decoder.image.height));
         }
-        // Ensure that the bitmap format is RGBA_8888, RGB_565 or RGBA_F16.
-        if (bitmap.getType() != BufferedImage.TYPE_4BYTE_ABGR &&
-                bitmap.getType() != BufferedImage.TYPE_USHORT_565_RGB) {
-            throw new IllegalStateException(String.format("Bitmap format (%d) is not supported.", bitmap.getType()));
+        // Ensure that the bitmap format is RGBA_8888, BGR_888, XRGB_8888, ARGB_8888 or RGB_565.
+        int type = bitmap.getType();
+        boolean ints = type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE;
+        if (type != BufferedImage.TYPE_4BYTE_ABGR && type != BufferedImage.TYPE_4BYTE_ABGR_PRE &&
+                !((type == BufferedImage.TYPE_3BYTE_BGR || ints || type == BufferedImage.TYPE_USHORT_565_RGB) && isPacked(bitmap))) {
+            throw new IllegalStateException(String.format("Bitmap format (%d) is not supported.", type));
+        }
+        if (yuvToRgb != null && options.allowsNearest()) {
+            decoder.image.read();
+            YuvImage yuv = new YuvImage(decoder.image, () -> {});
+            if (YuvToRgb.isSupported(yuv, bitmap)) {
+                bands.convert(yuv.getHeight(), yuv.chromaShiftY(), (y0, y1) -> yuvToRgb.convert(yuv, bitmap, y0, y1));
+                return bitmap;
+            }
+logger.log(Level.DEBUG, "not supported by the java converter, fall back to libavif");
         }
         avifRGBImage rgb_image = new avifRGBImage();
         AvifLibrary.INSTANCE.avifRGBImageSetDefaults(rgb_image, decoder.image);
         int bytes;
-        if (bitmap.getType() == BufferedImage.TYPE_USHORT_565_RGB) {
-            rgb_image.format = AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_RGB;
+        if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            // same byte order as the raster, so the pixels are copied as is
+            rgb_image.format = AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_BGR;
+            rgb_image.depth = 8;
+            bytes = 3;
+        } else if (ints) {
+            // 0xaarrggbb ints in the native byte order
+            rgb_image.format = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ?
+                    AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_BGRA : AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_ARGB;
+            rgb_image.ignoreAlpha = type == BufferedImage.TYPE_INT_RGB ? AvifLibrary.AVIF_TRUE : AvifLibrary.AVIF_FALSE;
+            rgb_image.depth = 8;
+            bytes = 4;
+        } else if (type == BufferedImage.TYPE_USHORT_565_RGB) {
+            // rrrrrggggggbbbbb shorts in the native byte order, alpha is dropped
+            rgb_image.format = AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_RGB_565;
             rgb_image.depth = 8;
             bytes = 2;
         } else {
@@ -149,98 +697,528 @@ logger.log(Level.TRACE,"image depth: " + decoder.image.depth);
         ByteBuffer nativeBuffer = ByteBuffer.allocateDirect(bitmap.getWidth() * bitmap.getHeight() * bytes);
         rgb_image.pixels = Native.getDirectBufferPointer(nativeBuffer);
         rgb_image.rowBytes = bitmap.getWidth() * bytes;
-        res = AvifLibrary.INSTANCE.avifImageYUVToRGB(decoder.image, rgb_image);
-        if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
-            throw new IllegalStateException(String.format("Failed to convert YUV Pixels to RGB. Status: %d", res));
+        // bands are already parallel
+        rgb_image.maxThreads = bands.isParallel() ? 1 : decoder.maxThreads;
+        rgb_image.writeField("format");
+        rgb_image.writeField("depth");
+        rgb_image.writeField("ignoreAlpha");
+        // libavif premultiplies or unpremultiplies when the image is stored differently
+        rgb_image.alphaPremultiplied = bitmap.isAlphaPremultiplied() ? AvifLibrary.AVIF_TRUE : AvifLibrary.AVIF_FALSE;
+        rgb_image.writeField("alphaPremultiplied");
+        rgb_image.writeField("pixels");
+        rgb_image.writeField("rowBytes");
+        rgb_image.writeField("maxThreads");
+        rgb_image.chromaUpsampling = options.getChromaUpsampling();
+        rgb_image.avoidLibYUV = options.isAvoidLibYUV() ? AvifLibrary.AVIF_TRUE : AvifLibrary.AVIF_FALSE;
+        rgb_image.writeField("chromaUpsampling");
+        rgb_image.writeField("avoidLibYUV");
+        int chromaShiftY = decoder.image.yuvFormat == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420 ? 1 : 0;
+        // a row of a band is upsampled with the chroma row next to the band, so bands overlap by a chroma row
+        int overlap = chromaShiftY == 1 ? 2 : 0;
+        bands.convert(rgb_image.height, chromaShiftY, (y0, y1) -> convert(decoder.image.getPointer(), rgb_image, y0, y1, overlap));
+        if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            nativeBuffer.get(((DataBufferByte) bitmap.getRaster().getDataBuffer()).getData());
+            return bitmap;
+        } else if (ints) {
+            nativeBuffer.order(ByteOrder.nativeOrder()).asIntBuffer().get(((DataBufferInt) bitmap.getRaster().getDataBuffer()).getData());
+            return bitmap;
+        } else if (type == BufferedImage.TYPE_USHORT_565_RGB) {
+            nativeBuffer.order(ByteOrder.nativeOrder()).asShortBuffer().get(((DataBufferUShort) bitmap.getRaster().getDataBuffer()).getData());
+            return bitmap;
         }
         // because nativeBuffer doesn't have array()
         ByteBuffer localBuffer = ByteBuffer.allocate(nativeBuffer.capacity());
         localBuffer.put(nativeBuffer);
         bitmap.getRaster().setDataElements(0, 0, bitmap.getWidth(), bitmap.getHeight(), localBuffer.array());
-        AvifLibrary.INSTANCE.avifDecoderDestroy(decoder);
         return bitmap;
     }
 
-    /** Encodes the java image into the AVIF image. */
+    /** @return true if the raster's array has the pixels only, from the top left to the bottom right */
+    private static boolean isPacked(BufferedImage bitmap) {
+        WritableRaster raster = bitmap.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        int samples = bitmap.getType() == BufferedImage.TYPE_3BYTE_BGR ? 3 : 1;
+        return raster.getParent() == null && buffer.getNumBanks() == 1 && buffer.getOffset() == 0 &&
+                buffer.getSize() == bitmap.getWidth() * bitmap.getHeight() * samples;
+    }
+
+    /**
+     * Returns the type of a new image for the parsed image,
+     * {@link BufferedImage#TYPE_3BYTE_BGR} for an opaque image, which needs 25% less memory than
+     * {@link BufferedImage#TYPE_4BYTE_ABGR} and is drawn without alpha blending.
+     */
+    private static int compatibleType(avifDecoder decoder) {
+        return decoder.alphaPresent == AvifLibrary.AVIF_TRUE ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+    }
+
+    /**
+     * Converts the rows from y0 (inclusive) to y1 (exclusive) of the image into the same rows of the rgb.
+     * a band is converted through a view of the image and the rgb which starts at the band.
+     * with an overlap, the view is extended by the rows above and below into a scratch buffer,
+     * and only the rows of the band are copied into the rgb.
+     *
+     * @param rgb all fields must be written
+     * @param overlap rows added to each side of the view, aligned to the chroma subsampling
+     */
+    private static void convert(Pointer image, avifRGBImage rgb, int y0, int y1, int overlap) {
+        int v0 = Math.max(0, y0 - overlap);
+        int v1 = Math.min(rgb.height, y1 + overlap);
+        if (y0 == 0 && y1 == rgb.height) {
+            int res = AvifDirect.avifImageYUVToRGB(image, rgb.getPointer());
+            if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                throw new IllegalStateException(String.format("Failed to convert YUV Pixels to RGB. Status: %d", res));
+            }
+            return;
+        }
+        avifImage view = AvifLibrary.INSTANCE.avifImageCreateEmpty();
+        if (view == null) {
+            throw new OutOfMemoryError("avifImageCreateEmpty");
+        }
+        // the view is filled by libavif
+        view.setAutoWrite(false);
+        view.setAutoRead(false);
+        try {
+            avifCropRect rect = new avifCropRect(0, v0, rgb.width, v1 - v0);
+            rect.write();
+            int res = AvifDirect.avifImageSetViewRect(view.getPointer(), image, rect.getPointer());
+            if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                throw new IllegalStateException(String.format("Failed to set a view: %s", AvifLibrary.INSTANCE.avifResultToString(res)));
+            }
+            avifRGBImage band = new avifRGBImage();
+            band.getPointer().write(0, rgb.getPointer().getByteArray(0, rgb.size()), 0, rgb.size());
+            band.read();
+            band.height = v1 - v0;
+            Memory scratch = v0 < y0 || y1 < v1 ? new Memory((long) (v1 - v0) * rgb.rowBytes) : null;
+            band.pixels = scratch != null ? scratch : rgb.pixels.share((long) y0 * rgb.rowBytes);
+            band.write();
+            res = AvifDirect.avifImageYUVToRGB(view.getPointer(), band.getPointer());
+            if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                throw new IllegalStateException(String.format("Failed to convert YUV Pixels to RGB. Status: %d", res));
+            }
+            if (scratch != null) {
+                long size = (long) (y1 - y0) * rgb.rowBytes;
+                rgb.pixels.getByteBuffer((long) y0 * rgb.rowBytes, size).put(scratch.getByteBuffer((long) (y0 - v0) * rgb.rowBytes, size));
+                scratch.close();
+            }
+        } finally {
+            AvifLibrary.INSTANCE.avifImageDestroy(view);
+        }
+    }
+
+    /**
+     * Encodes the java image into the AVIF image.
+     *
+     * @param quality 0 ~ 100, {@link AvifLibrary#AVIF_QUALITY_DEFAULT} for libavif default
+     */
     public ByteBuffer encode(BufferedImage bitmap, int quality) {
+        return encode(bitmap, quality, defaultEncodeOptions);
+    }
+
+    /**
+     * Encodes the java image into the AVIF image with the chroma subsampling and the downsampling.
+     *
+     * @param quality 0 ~ 100, {@link AvifLibrary#AVIF_QUALITY_DEFAULT} for libavif default,
+     *                ignored when {@link EncodeOptions#isLossless() lossless}
+     * @throws IllegalStateException when the conversion fails, e.g. sharp yuv is not available
+     * @throws IllegalArgumentException when a codec specific option cannot be set or the codec rejects it
+     */
+    public ByteBuffer encode(BufferedImage bitmap, int quality, EncodeOptions options) {
+        return gate.call(() -> encodeInternal(bitmap, quality, options));
+    }
+
+    /** Encodes the java image, calls native code without the gate. */
+    private ByteBuffer encodeInternal(BufferedImage bitmap, int quality, EncodeOptions options) {
+        avifImage image = toYuv(bitmap, options);
+        try {
+            return encode(image, quality, options, threads);
+        } finally {
+            AvifLibrary.INSTANCE.avifImageDestroy(image);
+        }
+    }
+
+    /**
+     * Converts the java image into a new YUV image, calls native code without the gate.
+     * the result must be destroyed by {@code avifImageDestroy}, it is never written
+     * nor read by jna after this, so that encoders can share it.
+     */
+    private static avifImage toYuv(BufferedImage bitmap, EncodeOptions options) {
 logger.log(Level.DEBUG,"depth: " + bitmap.getColorModel().getPixelSize() / bitmap.getColorModel().getNumComponents());
-        avifImage image = AvifLibrary.INSTANCE.avifImageCreate(bitmap.getWidth(), bitmap.getHeight(), bitmap.getColorModel().getPixelSize() / bitmap.getColorModel().getNumComponents(), AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV444); // these values dictate what goes into the final AVIF
+        if (bitmap.getType() != BufferedImage.TYPE_4BYTE_ABGR && bitmap.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+            throw new IllegalStateException(String.format("Bitmap format (%d) is not supported.", bitmap.getType()));
+        }
+        // lossless needs 4:4:4, the other chroma formats lose samples
+        int yuvFormat = options.isLossless() ? AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV444 : options.getYuvFormat();
+        avifImage image = AvifLibrary.INSTANCE.avifImageCreate(bitmap.getWidth(), bitmap.getHeight(), bitmap.getColorModel().getPixelSize() / bitmap.getColorModel().getNumComponents(), yuvFormat); // these values dictate what goes into the final AVIF
         if (image == null) {
             throw new OutOfMemoryError("avifImageCreate");
         }
-        // Configure image here: (see avif/avif.h)
-        // * colorPrimaries
-        // * transferCharacteristics
-        // * matrixCoefficients
-        // * avifImageSetProfileICC()
-        // * avifImageSetMetadataExif()
-        // * avifImageSetMetadataXMP()
-        // * yuvRange
-        // * alphaPremultiplied
-        // * transforms (transformFlags, pasp, clap, irot, imir)
-
-        // If you have RGB(A) data you want to encode, use this path
+        avifRGBImage rgb = new avifRGBImage();
+        try {
+            // Configure image here: (see avif/avif.h)
+            // * colorPrimaries
+            // * transferCharacteristics
+            // * matrixCoefficients
+            // * avifImageSetProfileICC()
+            // * avifImageSetMetadataExif()
+            // * avifImageSetMetadataXMP()
+            // * yuvRange
+            // * alphaPremultiplied
+            // * transforms (transformFlags, pasp, clap, irot, imir)
+            if (options.isLossless()) {
+                // g, b, r are stored as y, u, v as they are, no color matrix rounds the samples
+                image.matrixCoefficients = (short) AvifLibrary.AVIF_MATRIX_COEFFICIENTS_IDENTITY;
+                image.yuvRange = AvifLibrary.avifRange.AVIF_RANGE_FULL;
+            }
+
+            // If you have RGB(A) data you want to encode, use this path
 logger.log(Level.DEBUG,"Encoding from converted RGBA");
 
-        if (bitmap.getType() != BufferedImage.TYPE_4BYTE_ABGR) {
-            throw new IllegalStateException(String.format("Bitmap format (%d) is not supported.", bitmap.getType()));
-        }
-        avifRGBImage rgb = new avifRGBImage();
-        AvifLibrary.INSTANCE.avifRGBImageSetDefaults(rgb, image);
-        rgb.format = AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_ABGR;
-        // Override RGB(A)->YUV(A) defaults here:
-        //   depth, format, chromaDownsampling, avoidLibYUV, ignoreAlpha, alphaPremultiplied, etc.
-
-        AvifLibrary.INSTANCE.avifRGBImageAllocatePixels(rgb);
-        ByteBuffer nativeBuffer = rgb.pixels.getByteBuffer(0, (long) rgb.rowBytes * rgb.height);
-//        ByteBuffer nativeBuffer = ByteBuffer.allocateDirect(bitmap.getWidth() * bitmap.getHeight() * bytes);
-//        rgb.pixels = Native.getDirectBufferPointer(nativeBuffer);
-//        rgb.rowBytes = bitmap.getWidth() * bytes;
+            AvifLibrary.INSTANCE.avifRGBImageSetDefaults(rgb, image);
+            rgb.format = bitmap.getType() == BufferedImage.TYPE_3BYTE_BGR ? AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_BGR : AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_ABGR;
+            // Override RGB(A)->YUV(A) defaults here:
+            //   depth, format, chromaDownsampling, avoidLibYUV, ignoreAlpha, alphaPremultiplied, etc.
+            rgb.chromaDownsampling = options.getChromaDownsampling();
+
+            AvifLibrary.INSTANCE.avifRGBImageAllocatePixels(rgb);
+            ByteBuffer nativeBuffer = rgb.pixels.getByteBuffer(0, (long) rgb.rowBytes * rgb.height);
 //logger.log(Level.DEBUG, StringUtil.paramString(rgb)); // TODO paramString doesn't work jdk16+
 
-        nativeBuffer.put(((DataBufferByte) bitmap.getRaster().getDataBuffer()).getData());
+            nativeBuffer.put(((DataBufferByte) bitmap.getRaster().getDataBuffer()).getData());
+
+            // libavif allocates the planes, java side values must not be written back
+            image.write();
+            image.setAutoWrite(false);
+            image.setAutoRead(false);
+            int convertResult = AvifDirect.avifImageRGBToYUV(image.getPointer(), rgb.getPointer());
+            if (convertResult != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                throw new IllegalStateException(String.format("Failed to convert to YUV(A): %s", AvifLibrary.INSTANCE.avifResultToString(convertResult)));
+            }
+            return image;
+        } catch (RuntimeException | Error e) {
+            AvifLibrary.INSTANCE.avifImageDestroy(image);
+            throw e;
+        } finally {
+            AvifLibrary.INSTANCE.avifRGBImageFreePixels(rgb);
+        }
+    }
+
+    /**
+     * Encodes the java image into the AVIF image of the highest quality which fits in the budget.
+     *
+     * @param maxBytes the budget of the encoded size
+     * @throws IllegalArgumentException when the image doesn't fit even in quality 0
+     * @see #encodeToSize(BufferedImage, int, EncodeOptions)
+     */
+    public ByteBuffer encodeToSize(BufferedImage bitmap, int maxBytes) {
+        return encodeToSize(bitmap, maxBytes, defaultEncodeOptions);
+    }
 
-        int convertResult = AvifLibrary.INSTANCE.avifImageRGBToYUV(image, rgb);
-        if (convertResult != AvifLibrary.avifResult.AVIF_RESULT_OK) {
-            throw new IllegalStateException(String.format("Failed to convert to YUV(A): %s", AvifLibrary.INSTANCE.avifResultToString(convertResult)));
+    /**
+     * Encodes the java image into the AVIF image of the highest quality which fits in the budget.
+     * <p>
+     * The quality is binary searched by encoding several candidates in parallel.
+     * The colors are converted to YUV only once, the candidates share the converted image.
+     * The encoded size is assumed to grow with the quality.
+     *
+     * @param maxBytes the budget of the encoded size
+     * @return the encoded image whose size is maxBytes or less
+     * @throws IllegalArgumentException when the image doesn't fit even in quality 0, or the options are lossless
+     */
+    public ByteBuffer encodeToSize(BufferedImage bitmap, int maxBytes, EncodeOptions options) {
+        if (options.isLossless()) {
+            throw new IllegalArgumentException("lossless has no quality to search");
         }
+        int parallelism = sizeSearchExecutor.getMaximumPoolSize();
+        int encoderThreads = Math.max(1, threads / parallelism);
+        avifImage image = gate.call(() -> toYuv(bitmap, options));
+        List<Future<ByteBuffer>> futures = new ArrayList<>(parallelism);
+long t = System.currentTimeMillis();
+        try {
+            int lo = -1; // the highest quality which fits
+            int hi = AvifLibrary.AVIF_QUALITY_LOSSLESS + 1; // the lowest quality above lo which doesn't fit
+            ByteBuffer best = null;
+            long smallest = 0;
+            while (hi - lo > 1) {
+                int n = Math.min(parallelism, hi - lo - 1);
+                int[] candidates = new int[n];
+                for (int i = 0; i < n; i++) {
+                    int quality = lo + (hi - lo) * (i + 1) / (n + 1);
+                    candidates[i] = quality;
+                    futures.add(sizeSearchExecutor.submit(() -> gate.call(() -> encode(image, quality, options, encoderThreads))));
+                }
+                ByteBuffer[] results = await(futures);
+                futures.clear();
+                int l = lo;
+                for (int i = 0; i < n; i++) {
+logger.log(Level.DEBUG, "quality: " + candidates[i] + ", size: " + results[i].remaining());
+                    if (results[i].remaining() <= maxBytes && candidates[i] > l) {
+                        l = candidates[i];
+                        best = results[i];
+                    }
+                    if (candidates[i] == 0) {
+                        smallest = results[i].remaining();
+                    }
+                }
+                int h = hi;
+                for (int i = n - 1; i >= 0; i--) {
+                    if (results[i].remaining() > maxBytes && candidates[i] > l) {
+                        h = candidates[i];
+                    }
+                }
+                lo = l;
+                hi = h;
+            }
+            if (best == null) {
+                throw new IllegalArgumentException(String.format("%d bytes is too small, quality 0 is %d bytes", maxBytes, smallest));
+            }
+logger.log(Level.DEBUG, "quality: " + lo + ", size: " + best.remaining() + ", time: " + (System.currentTimeMillis() - t));
+            return best;
+        } finally {
+            // the candidates must be finished before the shared image is destroyed
+            if (!futures.isEmpty()) {
+                try {
+                    await(futures);
+                } catch (RuntimeException e) {
+logger.log(Level.DEBUG, "candidate failed: " + e);
+                }
+            }
+            gate.call(() -> {
+                AvifLibrary.INSTANCE.avifImageDestroy(image);
+                return null;
+            });
+        }
+    }
 
+    /**
+     * @param prefix of the thread names
+     * @return a pool of the parallelism daemon threads at most, which are started on demand and stop when idle
+     */
+    private static ThreadPoolExecutor newExecutor(String prefix, int parallelism) {
+        int size = Math.max(1, parallelism);
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Waits for all the futures, so that no task is running after this.
+     *
+     * @throws IllegalStateException the first failure, or interrupted
+     */
+    private static ByteBuffer[] await(List<Future<ByteBuffer>> futures) {
+        ByteBuffer[] results = new ByteBuffer[futures.size()];
+        RuntimeException failure = null;
+        boolean interrupted = false;
+        for (int i = 0; i < results.length; i++) {
+            while (true) {
+                try {
+                    results[i] = futures.get(i).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException r ? r : new IllegalStateException(e.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            if (failure == null) {
+                failure = new IllegalStateException("interrupted");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Encodes the YUV planes into the AVIF image without color conversion.
+     * the planes are passed to libavif as they are.
+     *
+     * @param yuv the planes, e.g. from a video pipeline
+     * @param quality 0 ~ 100, {@link AvifLibrary#AVIF_QUALITY_DEFAULT} for libavif default
+     */
+    public ByteBuffer encode(YuvImage yuv, int quality) {
+        return gate.call(() -> encodeInternal(yuv, quality));
+    }
+
+    /** Encodes the planes, calls native code without the gate. */
+    private ByteBuffer encodeInternal(YuvImage yuv, int quality) {
+        avifImage image = AvifLibrary.INSTANCE.avifImageCreate(yuv.getWidth(), yuv.getHeight(), yuv.getDepth(), yuv.getYuvFormat());
+        if (image == null) {
+            throw new OutOfMemoryError("avifImageCreate");
+        }
+        try {
+            image.yuvRange = yuv.getYuvRange();
+            image.matrixCoefficients = (short) yuv.getMatrixCoefficients();
+            // borrow the caller's planes, avifImageDestroy doesn't free them
+            for (int channel : new int[] { AvifLibrary.avifChannelIndex.AVIF_CHAN_Y, AvifLibrary.avifChannelIndex.AVIF_CHAN_U, AvifLibrary.avifChannelIndex.AVIF_CHAN_V }) {
+                ByteBuffer plane = yuv.getPlane(channel);
+                if (plane != null) {
+                    image.yuvPlanes[channel] = Native.getDirectBufferPointer(plane);
+                    image.yuvRowBytes[channel] = yuv.getRowBytes(channel);
+                }
+            }
+            image.imageOwnsYUVPlanes = AvifLibrary.AVIF_FALSE;
+            if (yuv.hasAlpha()) {
+                image.alphaPlane = Native.getDirectBufferPointer(yuv.getPlane(AvifLibrary.avifChannelIndex.AVIF_CHAN_A));
+                image.alphaRowBytes = yuv.getRowBytes(AvifLibrary.avifChannelIndex.AVIF_CHAN_A);
+                image.imageOwnsAlphaPlane = AvifLibrary.AVIF_FALSE;
+            }
+            image.write();
+            image.setAutoWrite(false);
+logger.log(Level.DEBUG,"Encoding from YUV planes: " + yuv.getWidth() + "x" + yuv.getHeight() + ", format: " + yuv.getYuvFormat());
+
+            return encode(image, quality, defaultEncodeOptions, threads);
+        } finally {
+            AvifLibrary.INSTANCE.avifImageDestroy(image);
+        }
+    }
+
+    /**
+     * Encodes the prepared image by a new encoder.
+     * <p>
+     * libavif has no way to reset an encoder, the added image stays in the encoder
+     * until it is destroyed, so an encoder is created for each image.
+     *
+     * @param maxThreads threads of the encoder
+     * @throws IllegalArgumentException when a codec specific option cannot be set or the codec rejects it
+     */
+    private ByteBuffer encode(avifImage image, int quality, EncodeOptions options, int maxThreads) {
+        int codecChoice = options.getCodecChoice() != AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO ? options.getCodecChoice() : encodeCodec;
         avifEncoder encoder = AvifLibrary.INSTANCE.avifEncoderCreate();
         if (encoder == null) {
             throw new OutOfMemoryError("avifEncoderCreate");
         }
-        // Configure your encoder here (see avif/avif.h):
-        // * maxThreads
-        // * quality
-        // * qualityAlpha
-        // * tileRowsLog2
-        // * tileColsLog2
-        // * speed
-        // * keyframeInterval
-        // * timescale
-        encoder.maxThreads = Runtime.getRuntime().availableProcessors();
-//        encoder.quality = quality;
-//        encoder.qualityAlpha = AvifLibrary.AVIF_QUALITY_LOSSLESS;
-
-        // Call avifEncoderAddImage() for each image in your sequence
-        // Only set AVIF_ADD_IMAGE_FLAG_SINGLE if you're not encoding a sequence
-        // Use avifEncoderAddImageGrid() instead with an array of avifImage* to make a grid image
-        int addImageResult = AvifLibrary.INSTANCE.avifEncoderAddImage(encoder, image, 1, AvifLibrary.avifAddImageFlag.AVIF_ADD_IMAGE_FLAG_SINGLE);
-        if (addImageResult != AvifLibrary.avifResult.AVIF_RESULT_OK) {
-            throw new IllegalStateException(String.format("Failed to add image to encoder: %s", AvifLibrary.INSTANCE.avifResultToString(addImageResult)));
-        }
-
-        avifRWData avifOutput = new avifRWData();
-        int finishResult = AvifLibrary.INSTANCE.avifEncoderFinish(encoder, avifOutput);
-        if (finishResult != AvifLibrary.avifResult.AVIF_RESULT_OK) {
-            throw new IllegalStateException(String.format("Failed to finish encode: %s", AvifLibrary.INSTANCE.avifResultToString(finishResult)));
-        }
+        try {
+            // Configure your encoder here (see avif/avif.h):
+            // * maxThreads
+            // * quality
+            // * qualityAlpha
+            // * tileRowsLog2
+            // * tileColsLog2
+            // * speed
+            // * keyframeInterval
+            // * timescale
+            encoder.codecChoice = codecChoice;
+            encoder.maxThreads = maxThreads;
+            encoder.speed = AvifLibrary.AVIF_SPEED_DEFAULT;
+            encoder.quality = options.isLossless() ? AvifLibrary.AVIF_QUALITY_LOSSLESS : quality;
+            encoder.qualityAlpha = options.isLossless() ? AvifLibrary.AVIF_QUALITY_LOSSLESS : AvifLibrary.AVIF_QUALITY_DEFAULT;
+
+            // Call avifEncoderAddImage() for each image in your sequence
+            // Only set AVIF_ADD_IMAGE_FLAG_SINGLE if you're not encoding a sequence
+            // Use avifEncoderAddImageGrid() instead with an array of avifImage* to make a grid image
+            for (Map.Entry<String, String> e : options.getCodecSpecificOptions().entrySet()) {
+                int result = AvifLibrary.INSTANCE.avifEncoderSetCodecSpecificOption(encoder, e.getKey(), e.getValue());
+                if (result != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                    throw new IllegalArgumentException(String.format("Failed to set codec specific option %s: %s", e.getKey(), AvifLibrary.INSTANCE.avifResultToString(result)));
+                }
+            }
+            int addImageResult = AvifLibrary.INSTANCE.avifEncoderAddImage(encoder, image, 1, AvifLibrary.avifAddImageFlag.AVIF_ADD_IMAGE_FLAG_SINGLE);
+            if (addImageResult == AvifLibrary.avifResult.AVIF_RESULT_INVALID_CODEC_SPECIFIC_OPTION) {
+                throw new IllegalArgumentException(String.format("%s rejects the codec specific options: %s",
+                        getCodecName(codecChoice, AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_ENCODE), options.getCodecSpecificOptions()));
+            }
+            if (addImageResult != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                throw new IllegalStateException(String.format("Failed to add image to encoder: %s", AvifLibrary.INSTANCE.avifResultToString(addImageResult)));
+            }
+
+            avifRWData avifOutput = new avifRWData();
+            int finishResult = AvifLibrary.INSTANCE.avifEncoderFinish(encoder, avifOutput);
+            if (finishResult != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+                throw new IllegalStateException(String.format("Failed to finish encode: %s", AvifLibrary.INSTANCE.avifResultToString(finishResult)));
+            }
 
 logger.log(Level.DEBUG, "Encode success: {0} total bytes", avifOutput.size.longValue());
 
-        AvifLibrary.INSTANCE.avifRGBImageFreePixels(rgb);
-        AvifLibrary.INSTANCE.avifEncoderDestroy(encoder);
+            // copy out, so that the native output can be freed
+            ByteBuffer result = ByteBuffer.allocate((int) avifOutput.size.longValue());
+            result.put(avifOutput.data.getByteBuffer(0, avifOutput.size.longValue()));
+            result.flip();
+            AvifLibrary.INSTANCE.avifRWDataFree(avifOutput);
+            return result;
+        } finally {
+            AvifLibrary.INSTANCE.avifEncoderDestroy(encoder);
+        }
+    }
+
+    /**
+     * Decodes many AVIF images in a pipeline.
+     * <p>
+     * Reading the next sources overlaps decoding and color conversion of the
+     * previous ones. The batch shares pooled decoders, input buffers and the
+     * thread budget. This method blocks until all sources are processed.
+     *
+     * @param sources {@link Path}s or {@link ByteBuffer}s, a buffer is decoded from its position to its limit
+     * @param consumer receives the index of a source and its decoded image, it is called concurrently from worker threads
+     * @param errorHandler receives the index of a source and the cause when the source is failed, it is called concurrently from worker threads
+     * @throws IllegalArgumentException when a source is neither {@link Path} nor {@link ByteBuffer}
+     */
+    public void decodeAll(List<?> sources, BiConsumer<Integer, BufferedImage> consumer, BiConsumer<Integer, Throwable> errorHandler) {
+        new BatchDecoder(this, threads, batchIoExecutor, batchDecodeExecutor, batchConvertExecutor).run(sources, consumer, errorHandler);
+    }
+
+    /**
+     * Decodes many AVIF images in a pipeline.
+     *
+     * @param sources {@link Path}s or {@link ByteBuffer}s, a buffer is decoded from its position to its limit
+     * @param consumer receives the index of a source and its decoded image, it is called concurrently from worker threads
+     * @throws IllegalStateException when any source is failed, after all sources are processed.
+     *         the first failure is the cause.
+     * @see #decodeAll(List, BiConsumer, BiConsumer)
+     */
+    public void decodeAll(List<?> sources, BiConsumer<Integer, BufferedImage> consumer) {
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<Throwable> first = new AtomicReference<>();
+        decodeAll(sources, consumer, (i, t) -> {
+            failures.incrementAndGet();
+            first.compareAndSet(null, t);
+        });
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " of " + sources.size() + " images failed", first.get());
+        }
+    }
 
-        return avifOutput.data.getByteBuffer(0, avifOutput.size.longValue());
+    /**
+     * Decodes the AVIF image asynchronously on the bounded executor.
+     * <p>
+     * The encoded buffer must not be modified until the future completes.
+     * Cancelling the future before the decode starts drops the task.
+     *
+     * @param encoded The encoded AVIF image. encoded.position() must be 0.
+     * @param length  Length of the encoded buffer.
+     * @return the future of the decoded image, it completes exceptionally with
+     *         {@link java.util.concurrent.RejectedExecutionException} when the executor is saturated.
+     */
+    public CompletableFuture<BufferedImage> decodeAsync(ByteBuffer encoded, int length) {
+        return asyncExecutor.submit(() -> decode(encoded, length));
+    }
+
+    /**
+     * Encodes the java image asynchronously on the bounded executor.
+     * <p>
+     * The image must not be modified until the future completes.
+     * Cancelling the future before the encode starts drops the task.
+     *
+     * @param quality 0 ~ 100, {@link AvifLibrary#AVIF_QUALITY_DEFAULT} for libavif default
+     * @return the future of the encoded image, it completes exceptionally with
+     *         {@link java.util.concurrent.RejectedExecutionException} when the executor is saturated.
+     */
+    public CompletableFuture<ByteBuffer> encodeAsync(BufferedImage bitmap, int quality) {
+        return asyncExecutor.submit(() -> encode(bitmap, quality));
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.io.Serial;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Splits a color conversion into horizontal bands and runs them in parallel.
+ * <p>
+ * A band is a range of rows, its top is aligned to the chroma subsampling,
+ * so that each band can be converted by itself into its slice of the destination.
+ * A conversion which upsamples chroma from the rows next to the band has to extend its source by itself.
+ * The bands are split recursively on a {@link ForkJoinPool}, the calling thread
+ * waits for all of them.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.convert.parallelism} ... threads of the pool, default 1 which converts on the calling thread</li>
+ *  <li>{@code vavi.awt.image.avif.convert.minRows} ... min rows of a band, default 64</li>
+ * </ul>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+final class BandConverter {
+
+    /** converts rows from y0 (inclusive) to y1 (exclusive) */
+    @FunctionalInterface
+    interface Band {
+        void convert(int y0, int y1);
+    }
+
+    /** null when the parallelism is 1 */
+    private final ForkJoinPool pool;
+
+    /** min rows of a band */
+    private final int minRows;
+
+    /** */
+    BandConverter() {
+        this(Integer.getInteger("vavi.awt.image.avif.convert.parallelism", 1),
+                Integer.getInteger("vavi.awt.image.avif.convert.minRows", 64));
+    }
+
+    /**
+     * @param parallelism threads of the pool, 1 or less for the calling thread
+     * @param minRows min rows of a band
+     */
+    BandConverter(int parallelism, int minRows) {
+        this.minRows = Math.max(minRows, 16);
+        if (parallelism > 1) {
+            AtomicInteger count = new AtomicInteger();
+            this.pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("avif-convert-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        } else {
+            this.pool = null;
+        }
+    }
+
+    /** @return true if bands are converted in parallel */
+    boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Converts all the rows.
+     *
+     * @param height rows of the image
+     * @param chromaShiftY 1 for 4:2:0, otherwise 0
+     * @param band the conversion of a band, it is called concurrently
+     */
+    void convert(int height, int chromaShiftY, Band band) {
+        if (pool == null || height < minRows * 2) {
+            band.convert(0, height);
+            return;
+        }
+        int bandRows = Math.max(minRows, (height + pool.getParallelism() * 2 - 1) / (pool.getParallelism() * 2));
+        pool.invoke(new Split(band, 0, height, bandRows, chromaShiftY));
+    }
+
+    /** halves the range until it fits in a band */
+    private static final class Split extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        final Band band;
+        final int y0;
+        final int y1;
+        final int bandRows;
+        final int chromaShiftY;
+
+        Split(Band band, int y0, int y1, int bandRows, int chromaShiftY) {
+            this.band = band;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.bandRows = bandRows;
+            this.chromaShiftY = chromaShiftY;
+        }
+
+        @Override
+        protected void compute() {
+            if (y1 - y0 <= bandRows) {
+                band.convert(y0, y1);
+                return;
+            }
+            int mid = ((y0 + y1) >>> 1) >> chromaShiftY << chromaShiftY;
+            invokeAll(new Split(band, y0, mid, bandRows, chromaShiftY),
+                    new Split(band, mid, y1, bandRows, chromaShiftY));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * Decodes many images in a pipeline.
+ * <p>
+ * io threads prefetch the next sources into pooled direct buffers while
+ * decode threads run av1 decoding of the previous ones and convert threads
+ * convert colors of the ones before. The number of images in flight is bounded,
+ * so memory doesn't grow with the number of sources. Each decode uses one native
+ * codec thread, the parallelism comes from decoding images side by side within
+ * the thread budget. The executors are owned by {@link Avif} and shared by batches.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.batch.ioThreads} ... number of prefetch threads, default 2</li>
+ *  <li>{@code vavi.awt.image.avif.batch.prefetch} ... max images in flight per decode thread, default 2</li>
+ * </ul>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+final class BatchDecoder {
+
+    private static final Logger logger = getLogger(BatchDecoder.class.getName());
+
+    /** */
+    private final Avif avif;
+
+    /** number of decode threads */
+    private final int threads;
+
+    /** prefetches the sources */
+    private final Executor io;
+
+    /** decodes av1 */
+    private final Executor decode;
+
+    /** converts colors */
+    private final Executor convert;
+
+    /** reusable input buffers */
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param threads the thread budget
+     */
+    BatchDecoder(Avif avif, int threads, Executor io, Executor decode, Executor convert) {
+        this.avif = avif;
+        this.threads = threads;
+        this.io = io;
+        this.decode = decode;
+        this.convert = convert;
+    }
+
+    /** an encoded image in a direct buffer */
+    private record Input(ByteBuffer buffer, int length, boolean pooled) {}
+
+    /**
+     * @param sources {@link Path}s or {@link ByteBuffer}s
+     * @param consumer receives the index of a source and its decoded image
+     * @param errorHandler receives the index of a source and the cause
+     * @throws IllegalArgumentException when a source is neither {@link Path} nor {@link ByteBuffer}
+     */
+    void run(List<?> sources, BiConsumer<Integer, BufferedImage> consumer, BiConsumer<Integer, Throwable> errorHandler) {
+        for (Object source : sources) {
+            if (!(source instanceof Path) && !(source instanceof ByteBuffer)) {
+                throw new IllegalArgumentException("unsupported source: " + (source == null ? null : source.getClass().getName()));
+            }
+        }
+
+        int maxInFlight = threads * Math.max(1, Integer.getInteger("vavi.awt.image.avif.batch.prefetch", 2));
+        Semaphore inFlight = new Semaphore(maxInFlight);
+long t = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                int index = i;
+                Object source = sources.get(i);
+                inFlight.acquireUninterruptibly();
+                CompletableFuture.supplyAsync(() -> load(source), io)
+                        .thenApplyAsync(input -> {
+                            try {
+                                return avif.decodeImage(input.buffer, input.length, 1);
+                            } finally {
+                                // the decoded planes don't refer to the input
+                                recycle(input);
+                            }
+                        }, decode)
+                        .thenApplyAsync(avif::convert, convert)
+                        .whenComplete((image, e) -> {
+                            try {
+                                if (e != null) {
+                                    errorHandler.accept(index, e.getCause() != null ? e.getCause() : e);
+                                } else {
+                                    consumer.accept(index, image);
+                                }
+                            } catch (Throwable u) {
+logger.log(Level.WARNING, "handler failed: " + index, u);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+            }
+            // all permits come back when all images are done
+            inFlight.acquireUninterruptibly(maxInFlight);
+        } finally {
+            buffers.clear();
+logger.log(Level.DEBUG, "batch: {0} images, {1} ms", sources.size(), System.currentTimeMillis() - t);
+        }
+    }
+
+    /** Reads the source into a direct buffer. */
+    private Input load(Object source) {
+        if (source instanceof ByteBuffer b) {
+            if (b.isDirect()) {
+                return new Input(b.slice(), b.remaining(), false);
+            } else {
+                ByteBuffer buffer = obtain(b.remaining());
+                buffer.put(b.duplicate());
+                return new Input(buffer, b.remaining(), true);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open((Path) source, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("too large: " + source);
+                }
+                ByteBuffer buffer = obtain((int) size);
+                while (buffer.position() < size) {
+                    if (channel.read(buffer) < 0) break;
+                }
+                return new Input(buffer, buffer.position(), true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** Gets a pooled direct buffer which has enough capacity or allocates a new one. */
+    private ByteBuffer obtain(int size) {
+        for (int i = buffers.size(); i > 0; i--) {
+            ByteBuffer buffer = buffers.poll();
+            if (buffer == null) {
+                break;
+            }
+            if (buffer.capacity() >= size) {
+                buffer.clear();
+                return buffer;
+            }
+            buffers.offer(buffer);
+        }
+        // rounds up to reuse for similar sizes
+        int capacity = Math.max(Integer.highestOneBit(Math.max(size - 1, 1)) << 1, 8192);
+        return ByteBuffer.allocateDirect(size > 1 << 30 ? size : capacity);
+    }
+
+    /** Returns the buffer to the pool. */
+    private void recycle(Input input) {
+        if (input.pooled) {
+            buffers.offer(input.buffer);
+        }
+    }
+}
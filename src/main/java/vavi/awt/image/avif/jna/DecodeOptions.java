@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import vavi.awt.image.jna.avif.AvifLibrary;
+
+
+/**
+ * Options of decoding which trade speed for fidelity.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ * @see Avif#decode(java.nio.ByteBuffer, int, DecodeOptions)
+ */
+public final class DecodeOptions {
+
+    /** */
+    private int chromaUpsampling = AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_AUTOMATIC;
+
+    /** */
+    private boolean avoidLibYUV;
+
+    /** */
+    private int codecChoice = AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO;
+
+    /** @return {@link AvifLibrary.avifChromaUpsampling} */
+    public int getChromaUpsampling() {
+        return chromaUpsampling;
+    }
+
+    /**
+     * Sets the chroma upsampling of 4:2:0 and 4:2:2 images, e.g.
+     * {@link AvifLibrary.avifChromaUpsampling#AVIF_CHROMA_UPSAMPLING_FASTEST} for thumbnails,
+     * {@link AvifLibrary.avifChromaUpsampling#AVIF_CHROMA_UPSAMPLING_BEST_QUALITY} for print masters.
+     *
+     * @param chromaUpsampling {@link AvifLibrary.avifChromaUpsampling}, default automatic
+     * @throws IllegalArgumentException when the value is out of the enum
+     */
+    public DecodeOptions setChromaUpsampling(int chromaUpsampling) {
+        if (chromaUpsampling < AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_AUTOMATIC ||
+                chromaUpsampling > AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_BILINEAR) {
+            throw new IllegalArgumentException("chromaUpsampling: " + chromaUpsampling);
+        }
+        this.chromaUpsampling = chromaUpsampling;
+        return this;
+    }
+
+    /** @return true if libyuv is not used */
+    public boolean isAvoidLibYUV() {
+        return avoidLibYUV;
+    }
+
+    /**
+     * @param avoidLibYUV true to convert by libavif's own code, which supports all the
+     *                    upsampling filters, false to take libyuv's fast paths if available
+     */
+    public DecodeOptions setAvoidLibYUV(boolean avoidLibYUV) {
+        this.avoidLibYUV = avoidLibYUV;
+        return this;
+    }
+
+    /** @return {@link AvifLibrary.avifCodecChoice} */
+    public int getCodecChoice() {
+        return codecChoice;
+    }
+
+    /**
+     * Sets the AV1 decoder, e.g. {@link AvifLibrary.avifCodecChoice#AVIF_CODEC_CHOICE_DAV1D}.
+     * available codecs are found by {@link Avif#getCodecName(int, int)}.
+     *
+     * @param codecChoice {@link AvifLibrary.avifCodecChoice}, default automatic which
+     *                    is {@code vavi.awt.image.avif.codec.decode} or libavif's choice
+     * @throws IllegalArgumentException when the value is out of the enum
+     */
+    public DecodeOptions setCodecChoice(int codecChoice) {
+        if (codecChoice < AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO ||
+                codecChoice > AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AVM) {
+            throw new IllegalArgumentException("codecChoice: " + codecChoice);
+        }
+        this.codecChoice = codecChoice;
+        return this;
+    }
+
+    /**
+     * @return true if the nearest neighbour upsampling of {@link YuvToRgb} is allowed,
+     *         automatic and best quality are left to libavif
+     */
+    boolean allowsNearest() {
+        return chromaUpsampling == AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_FASTEST ||
+                chromaUpsampling == AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_NEAREST;
+    }
+
+    /** the values which change the result, it's a part of the cache key */
+    @Override
+    public String toString() {
+        return "chromaUpsampling=" + chromaUpsampling + ",avoidLibYUV=" + avoidLibYUV + ",codecChoice=" + codecChoice;
+    }
+}
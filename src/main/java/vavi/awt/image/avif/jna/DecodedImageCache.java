@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * A bounded LRU cache of decoded images.
+ * <p>
+ * An image is keyed by the SHA-256 digest of the encoded bytes and the decode parameters,
+ * entries are evicted in least recently used order when the total pixel bytes
+ * exceed the limit. A cryptographic digest is used so that a crafted input cannot
+ * get the image of another input.
+ * <p>
+ * By default the cache keeps its own copy of an image, a miss returns the decoded
+ * image and a hit returns a copy of the cached one, a copy of the data array is much
+ * cheaper than decoding. With {@code shared} the cached image itself is returned,
+ * callers must not modify it then.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.cache.maxBytes} ... max pixel bytes of cached images, default 0 which disables the cache</li>
+ *  <li>{@code vavi.awt.image.avif.cache.soft} ... "true" to hold images by soft references, default false</li>
+ *  <li>{@code vavi.awt.image.avif.cache.shared} ... "true" to return the cached image itself on a hit, default false</li>
+ * </ul>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+public final class DecodedImageCache {
+
+    private static final Logger logger = getLogger(DecodedImageCache.class.getName());
+
+    /**
+     * Statistics of the cache.
+     *
+     * @param hits lookups which found an image
+     * @param misses lookups which decoded an image
+     * @param evictions images removed by the limit or collected by gc
+     * @param entries images in the cache
+     * @param bytes pixel bytes of the images in the cache
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes) {}
+
+    /** cache key */
+    private record Key(String digest, int length, String params) {}
+
+    /** a soft value which knows its key */
+    private static final class SoftImage extends SoftReference<BufferedImage> {
+        final Key key;
+
+        SoftImage(Key key, BufferedImage image, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+
+    /** cache entry */
+    private static final class Entry {
+        final long bytes;
+        /** null when soft */
+        final BufferedImage image;
+        /** null when strong */
+        final SoftImage soft;
+
+        Entry(long bytes, BufferedImage image, SoftImage soft) {
+            this.bytes = bytes;
+            this.image = image;
+            this.soft = soft;
+        }
+
+        BufferedImage get() {
+            return image != null ? image : soft.get();
+        }
+    }
+
+    /** max pixel bytes, 0 or less disables the cache */
+    private volatile long maxBytes;
+
+    /** */
+    private final boolean soft;
+
+    /** */
+    private final boolean shared;
+
+    /** access ordered */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** collected soft values */
+    private final ReferenceQueue<BufferedImage> queue = new ReferenceQueue<>();
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** */
+    DecodedImageCache() {
+        this(Long.getLong("vavi.awt.image.avif.cache.maxBytes", 0),
+                Boolean.getBoolean("vavi.awt.image.avif.cache.soft"),
+                Boolean.getBoolean("vavi.awt.image.avif.cache.shared"));
+    }
+
+    /** */
+    DecodedImageCache(long maxBytes, boolean soft, boolean shared) {
+        this.maxBytes = maxBytes;
+        this.soft = soft;
+        this.shared = shared;
+    }
+
+    /**
+     * Changes the limit, cached images are evicted if they exceed it.
+     *
+     * @param maxBytes max pixel bytes of cached images, 0 disables the cache
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /** @return max pixel bytes of cached images, 0 or less when disabled */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** Removes all images, statistics are kept. */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /** @return statistics of the cache */
+    public synchronized Stats getStats() {
+        purge();
+        return new Stats(hits, misses, evictions, entries.size(), bytes);
+    }
+
+    /**
+     * Gets the cached image or decodes and caches it.
+     * the decoder is called outside the lock, concurrent misses of the same key may decode twice.
+     *
+     * @param encoded the encoded image from the position 0
+     * @param length length of the encoded bytes
+     * @param params decode parameters which change the result
+     * @param decoder decodes the image on a miss
+     */
+    BufferedImage get(ByteBuffer encoded, int length, String params, Supplier<BufferedImage> decoder) {
+        if (maxBytes <= 0) {
+            return decoder.get();
+        }
+        Key key = new Key(digest(encoded, length), length, params);
+        BufferedImage image = lookup(key);
+        if (image != null) {
+            return shared ? image : copy(image);
+        }
+        image = decoder.get();
+        put(key, image);
+        return image;
+    }
+
+    /** @return the image, null on a miss */
+    private synchronized BufferedImage lookup(Key key) {
+        purge();
+        Entry entry = entries.get(key);
+        BufferedImage image = entry != null ? entry.get() : null;
+        if (image != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return image;
+    }
+
+    /** caches a copy of the image unless shared */
+    private void put(Key key, BufferedImage image) {
+        long size = sizeOf(image);
+        if (size > maxBytes) {
+logger.log(Level.DEBUG, "too large to cache: " + size);
+            return;
+        }
+        put(key, shared ? image : copy(image), size);
+    }
+
+    /** */
+    private synchronized void put(Key key, BufferedImage image, long size) {
+        Entry entry = soft ? new Entry(size, null, new SoftImage(key, image, queue)) : new Entry(size, image, null);
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+        bytes += size;
+        evict();
+    }
+
+    /** removes least recently used images until the total fits in the limit */
+    private void evict() {
+        Iterator<Entry> i = entries.values().iterator();
+        while (bytes > Math.max(maxBytes, 0) && i.hasNext()) {
+            bytes -= i.next().bytes;
+            i.remove();
+            evictions++;
+        }
+    }
+
+    /** removes entries whose soft values are collected */
+    private void purge() {
+        Reference<? extends BufferedImage> ref;
+        while ((ref = queue.poll()) != null) {
+            SoftImage image = (SoftImage) ref;
+            Entry entry = entries.get(image.key);
+            if (entry != null && entry.soft == image) {
+                entries.remove(image.key);
+                bytes -= entry.bytes;
+                evictions++;
+            }
+        }
+    }
+
+    /** @return SHA-256 of the encoded bytes in hex */
+    private static String digest(ByteBuffer encoded, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(encoded.slice(0, length));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every jdk has SHA-256
+        }
+    }
+
+    /** @return bytes of the data buffer */
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /** @return a new image which has a copy of the data array */
+    static BufferedImage copy(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        DataBuffer copied = null;
+        if (buffer.getNumBanks() == 1 && raster.getParent() == null) {
+            if (buffer instanceof DataBufferByte b) {
+                copied = new DataBufferByte(b.getData().clone(), b.getSize());
+            } else if (buffer instanceof DataBufferUShort b) {
+                copied = new DataBufferUShort(b.getData().clone(), b.getSize());
+            } else if (buffer instanceof DataBufferInt b) {
+                copied = new DataBufferInt(b.getData().clone(), b.getSize());
+            }
+        }
+        WritableRaster r = copied != null ? Raster.createWritableRaster(raster.getSampleModel(), copied, null) : image.copyData(null);
+        return new BufferedImage(image.getColorModel(), r, image.isAlphaPremultiplied(), null);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import vavi.awt.image.jna.avif.AvifDirect;
+import vavi.awt.image.jna.avif.AvifLibrary;
+import vavi.awt.image.jna.avif.avifDecoder;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * A bounded pool of pre-configured decoders.
+ * <p>
+ * Decoders are keyed by codec choice and thread count, a decoder is only
+ * recreated when one of those changes. A released decoder is unbound from
+ * its io and rebound to the next input by {@code avifDecoderSetIOMemory},
+ * {@code avifDecoderParse} cleans up the previous image and resets the decoder.
+ * <p>
+ * Pooled decoders are driven by {@link AvifDirect} and are never read or written
+ * as a whole, users read the fields they need after a call.
+ * <p>
+ * Decoders which hold a large decoded image are destroyed instead of pooled,
+ * so that idle decoders don't pin big planes.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.decoderPool.size} ... max idle decoders per key, default is number of processors, 0 disables pooling</li>
+ *  <li>{@code vavi.awt.image.avif.decoderPool.maxPixels} ... max pixels of a decoder's last image to be pooled, default 1024 x 1024</li>
+ * </ul>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+final class DecoderPool {
+
+    private static final Logger logger = getLogger(DecoderPool.class.getName());
+
+    /** pool key */
+    private record Key(int codecChoice, int maxThreads) {}
+
+    /** max idle decoders per key */
+    private final int capacity;
+
+    /** max pixels of the last decoded image which a pooled decoder may hold */
+    private final long maxPixels;
+
+    /** idle decoders */
+    private final Map<Key, BlockingDeque<avifDecoder>> idle = new ConcurrentHashMap<>();
+
+    /** */
+    DecoderPool() {
+        this(Integer.getInteger("vavi.awt.image.avif.decoderPool.size", Runtime.getRuntime().availableProcessors()),
+                Long.getLong("vavi.awt.image.avif.decoderPool.maxPixels", 1024 * 1024));
+    }
+
+    /** */
+    DecoderPool(int capacity, long maxPixels) {
+        this.capacity = capacity;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Gets an idle decoder or creates a new one, and binds it to the buffer.
+     *
+     * @param buffer the encoded image
+     * @param length length of the buffer
+     * @throws IllegalStateException when a decoder cannot be created or the buffer cannot be bound
+     */
+    avifDecoder acquire(int codecChoice, int maxThreads, Pointer buffer, int length) {
+        avifDecoder decoder = null;
+        BlockingDeque<avifDecoder> queue = idle.get(new Key(codecChoice, maxThreads));
+        if (queue != null) {
+            decoder = queue.pollFirst();
+        }
+        if (decoder == null) {
+            decoder = create(codecChoice, maxThreads);
+            // jna would read the whole decoder and its image after each call through the proxy
+            decoder.setAutoRead(false);
+        }
+        int res = AvifDirect.avifDecoderSetIOMemory(decoder.getPointer(), buffer, new NativeLong(length));
+        if (res != AvifLibrary.avifResult.AVIF_RESULT_OK) {
+            release(decoder);
+            throw new IllegalStateException("Failed to set AVIF IO to a memory reader.");
+        }
+        return decoder;
+    }
+
+    /** Creates a new pre-configured decoder, which is not pooled yet. */
+    static avifDecoder create(int codecChoice, int maxThreads) {
+        avifDecoder decoder = AvifLibrary.INSTANCE.avifDecoderCreate();
+        if (decoder == null) {
+            throw new IllegalStateException("Failed to create AVIF Decoder.");
+        }
+        decoder.codecChoice = codecChoice;
+        decoder.maxThreads = maxThreads;
+        decoder.ignoreXMP = AvifLibrary.AVIF_TRUE;
+        decoder.ignoreExif = AvifLibrary.AVIF_TRUE;
+
+        // Turn off 'clap' (clean aperture) property validation. The JNI wrapper
+        // ignores the 'clap' property.
+        decoder.strictFlags &= ~AvifLibrary.avifStrictFlag.AVIF_STRICT_CLAP_VALID;
+        // Allow 'pixi' (pixel information) property to be missing. Older versions of
+        // libheif did not add the 'pixi' item property to AV1 image items (See
+        // crbug.com/1198455).
+        decoder.strictFlags &= ~AvifLibrary.avifStrictFlag.AVIF_STRICT_PIXI_REQUIRED;
+
+        // libavif updates the decoder through direct mapped calls, so stale java side
+        // values must not be written back. fields changed later are written explicitly.
+        decoder.write();
+        decoder.setAutoWrite(false);
+logger.log(Level.TRACE, "decoder created: codec: " + codecChoice + ", threads: " + maxThreads);
+        return decoder;
+    }
+
+    /**
+     * Returns the decoder to the pool, the decoder is destroyed when the pool is full
+     * or the decoder holds a large image.
+     */
+    void release(avifDecoder decoder) {
+        if (decoder == null) {
+            return;
+        }
+        // drop the reference to the caller's buffer
+        AvifDirect.avifDecoderSetIO(decoder.getPointer(), null);
+
+        long pixels = decoder.image != null ? (long) decoder.image.width * decoder.image.height : 0;
+        if (pixels > maxPixels) {
+            AvifLibrary.INSTANCE.avifDecoderDestroy(decoder);
+            return;
+        }
+        Key key = new Key(decoder.codecChoice, decoder.maxThreads);
+        BlockingDeque<avifDecoder> queue = idle.computeIfAbsent(key, k -> new LinkedBlockingDeque<>(Math.max(capacity, 1)));
+        if (capacity <= 0 || !queue.offerFirst(decoder)) {
+            AvifLibrary.INSTANCE.avifDecoderDestroy(decoder);
+        }
+    }
+
+    /** Destroys all idle decoders. */
+    void clear() {
+        for (BlockingDeque<avifDecoder> queue : idle.values()) {
+            avifDecoder decoder;
+            while ((decoder = queue.pollFirst()) != null) {
+                AvifLibrary.INSTANCE.avifDecoderDestroy(decoder);
+            }
+        }
+    }
+}
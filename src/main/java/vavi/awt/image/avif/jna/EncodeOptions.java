@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import vavi.awt.image.jna.avif.AvifLibrary;
+
+
+/**
+ * Options of encoding which trade size and speed for fidelity.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ * @see Avif#encode(java.awt.image.BufferedImage, int, EncodeOptions)
+ */
+public final class EncodeOptions {
+
+    /** */
+    private int yuvFormat = AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV444;
+
+    /** */
+    private int chromaDownsampling = AvifLibrary.avifChromaDownsampling.AVIF_CHROMA_DOWNSAMPLING_AUTOMATIC;
+
+    /** */
+    private int codecChoice = AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO;
+
+    /** */
+    private boolean lossless;
+
+    /** in the order of setting */
+    private final Map<String, String> codecSpecificOptions = new LinkedHashMap<>();
+
+    /** @return {@link AvifLibrary.avifPixelFormat} */
+    public int getYuvFormat() {
+        return yuvFormat;
+    }
+
+    /**
+     * Sets the chroma subsampling, e.g.
+     * {@link AvifLibrary.avifPixelFormat#AVIF_PIXEL_FORMAT_YUV420} for photos,
+     * {@link AvifLibrary.avifPixelFormat#AVIF_PIXEL_FORMAT_YUV444} for graphics which have sharp colour edges.
+     *
+     * @param yuvFormat {@link AvifLibrary.avifPixelFormat} 444, 422 or 420, default 444
+     * @throws IllegalArgumentException when the value is not one of them
+     */
+    public EncodeOptions setYuvFormat(int yuvFormat) {
+        if (yuvFormat != AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV444 &&
+                yuvFormat != AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV422 &&
+                yuvFormat != AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420) {
+            throw new IllegalArgumentException("yuvFormat: " + yuvFormat);
+        }
+        this.yuvFormat = yuvFormat;
+        return this;
+    }
+
+    /** @return {@link AvifLibrary.avifChromaDownsampling} */
+    public int getChromaDownsampling() {
+        return chromaDownsampling;
+    }
+
+    /**
+     * Sets the chroma downsampling of 4:2:0 and 4:2:2, it is ignored for 4:4:4, e.g.
+     * {@link AvifLibrary.avifChromaDownsampling#AVIF_CHROMA_DOWNSAMPLING_FASTEST} for speed,
+     * {@link AvifLibrary.avifChromaDownsampling#AVIF_CHROMA_DOWNSAMPLING_SHARP_YUV} for sharp colour edges.
+     * sharp yuv needs libavif built with libsharpyuv, otherwise encoding fails.
+     *
+     * @param chromaDownsampling {@link AvifLibrary.avifChromaDownsampling}, default automatic
+     * @throws IllegalArgumentException when the value is out of the enum
+     */
+    public EncodeOptions setChromaDownsampling(int chromaDownsampling) {
+        if (chromaDownsampling < AvifLibrary.avifChromaDownsampling.AVIF_CHROMA_DOWNSAMPLING_AUTOMATIC ||
+                chromaDownsampling > AvifLibrary.avifChromaDownsampling.AVIF_CHROMA_DOWNSAMPLING_SHARP_YUV) {
+            throw new IllegalArgumentException("chromaDownsampling: " + chromaDownsampling);
+        }
+        this.chromaDownsampling = chromaDownsampling;
+        return this;
+    }
+
+    /** @return {@link AvifLibrary.avifCodecChoice} */
+    public int getCodecChoice() {
+        return codecChoice;
+    }
+
+    /**
+     * Sets the AV1 encoder, e.g. {@link AvifLibrary.avifCodecChoice#AVIF_CODEC_CHOICE_SVT} for speed.
+     * available codecs are found by {@link Avif#getCodecName(int, int)}.
+     *
+     * @param codecChoice {@link AvifLibrary.avifCodecChoice}, default automatic which
+     *                    is {@code vavi.awt.image.avif.codec.encode} or libavif's choice
+     * @throws IllegalArgumentException when the value is out of the enum
+     */
+    public EncodeOptions setCodecChoice(int codecChoice) {
+        if (codecChoice < AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO ||
+                codecChoice > AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AVM) {
+            throw new IllegalArgumentException("codecChoice: " + codecChoice);
+        }
+        this.codecChoice = codecChoice;
+        return this;
+    }
+
+    /** @return true if the pixels are encoded bit-exact */
+    public boolean isLossless() {
+        return lossless;
+    }
+
+    /**
+     * Sets the lossless mode, the decoded pixels are equal to the source ones.
+     * the color and the alpha are encoded by {@link AvifLibrary#AVIF_QUALITY_LOSSLESS}
+     * in 4:4:4 full range with the identity matrix, so the quality, the yuv format and
+     * the chroma downsampling are ignored.
+     *
+     * @param lossless true for the lossless mode, default false
+     */
+    public EncodeOptions setLossless(boolean lossless) {
+        this.lossless = lossless;
+        return this;
+    }
+
+    /** @return the options given to {@code avifEncoderSetCodecSpecificOption}, unmodifiable */
+    public Map<String, String> getCodecSpecificOptions() {
+        return Collections.unmodifiableMap(codecSpecificOptions);
+    }
+
+    /**
+     * Sets an option of the AV1 encoder, e.g. "tune" = "ssim", "sharpness" = "2" for aom.
+     * a key may be prefixed by the codec name, e.g. "aom:enable-chroma-deltaq", then the other
+     * codecs ignore it. the codec validates the options when encoding, an unknown key or
+     * a bad value fails the encoding by {@link IllegalArgumentException}.
+     *
+     * @param key the option name
+     * @param value the option value, null removes the option
+     * @throws IllegalArgumentException when the key is empty or contains a white space or '='
+     */
+    public EncodeOptions setCodecSpecificOption(String key, String value) {
+        if (key == null || key.isEmpty() || key.chars().anyMatch(c -> Character.isWhitespace(c) || c == '=')) {
+            throw new IllegalArgumentException("key: " + key);
+        }
+        if (value == null) {
+            codecSpecificOptions.remove(key);
+        } else {
+            codecSpecificOptions.put(key, value);
+        }
+        return this;
+    }
+
+    /**
+     * Replaces all the options of the AV1 encoder.
+     *
+     * @param options keys and values, see {@link #setCodecSpecificOption(String, String)}
+     * @throws IllegalArgumentException when a key is bad or a value is null
+     */
+    public EncodeOptions setCodecSpecificOptions(Map<String, String> options) {
+        Map<String, String> backup = new LinkedHashMap<>(codecSpecificOptions);
+        codecSpecificOptions.clear();
+        try {
+            options.forEach((k, v) -> {
+                if (v == null) {
+                    throw new IllegalArgumentException("value of " + k + " is null");
+                }
+                setCodecSpecificOption(k, v);
+            });
+        } catch (IllegalArgumentException e) {
+            codecSpecificOptions.clear();
+            codecSpecificOptions.putAll(backup);
+            throw e;
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "yuvFormat=" + yuvFormat + ",chromaDownsampling=" + chromaDownsampling + ",codecChoice=" + codecChoice + ",lossless=" + lossless +
+                ",codecSpecificOptions=" + codecSpecificOptions;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * Limits the number of threads running long native calls at the same time.
+ * <p>
+ * A jna call pins the carrier thread of a virtual thread while native code runs,
+ * so a burst of decodes on virtual threads starves the carrier pool. Waiting on
+ * the gate doesn't pin, a virtual thread parks there. Optionally long native calls
+ * from virtual threads are moved onto platform threads, the virtual thread just
+ * waits for the result.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.gate.permits} ... max concurrent native calls, default is number of processors</li>
+ *  <li>{@code vavi.awt.image.avif.gate.offloadVirtual} ... true to run native calls from virtual threads on platform threads, default false</li>
+ * </ul>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+final class NativeGate {
+
+    private static final Logger logger = getLogger(NativeGate.class.getName());
+
+    /** {@code Thread#isVirtual()}, null if the jdk doesn't support virtual threads */
+    private static final MethodHandle isVirtual;
+
+    static {
+        MethodHandle mh = null;
+        try {
+            mh = MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+logger.log(Level.TRACE, "no virtual thread support");
+        }
+        isVirtual = mh;
+    }
+
+    /** */
+    private final Semaphore permits;
+
+    /** platform threads for offloading, null if offloading is disabled */
+    private final ExecutorService offloader;
+
+    /** */
+    NativeGate() {
+        this(Integer.getInteger("vavi.awt.image.avif.gate.permits", Runtime.getRuntime().availableProcessors()),
+                Boolean.getBoolean("vavi.awt.image.avif.gate.offloadVirtual"));
+    }
+
+    /**
+     * @param permits max concurrent native calls
+     * @param offloadVirtual true to run native calls from virtual threads on platform threads
+     */
+    NativeGate(int permits, boolean offloadVirtual) {
+        this.permits = new Semaphore(Math.max(permits, 1), true);
+        if (offloadVirtual && isVirtual != null) {
+            AtomicInteger count = new AtomicInteger();
+            this.offloader = Executors.newFixedThreadPool(Math.max(permits, 1), r -> {
+                Thread thread = new Thread(r, "avif-native-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.offloader = null;
+        }
+    }
+
+    /** @return true if the current thread is a virtual thread */
+    static boolean isVirtualThread() {
+        if (isVirtual == null) {
+            return false;
+        }
+        try {
+            return (boolean) isVirtual.invokeExact(Thread.currentThread());
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Runs the task which calls native code through the gate.
+     *
+     * @throws RuntimeException thrown by the task
+     */
+    <T> T call(Supplier<T> task) {
+        if (offloader != null && isVirtualThread()) {
+            try {
+                return CompletableFuture.supplyAsync(() -> enter(task), offloader).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException r) {
+                    throw r;
+                } else if (e.getCause() instanceof Error r) {
+                    throw r;
+                }
+                throw e;
+            }
+        } else {
+            return enter(task);
+        }
+    }
+
+    /** Runs the task with a permit. */
+    private <T> T enter(Supplier<T> task) {
+        permits.acquireUninterruptibly();
+        try {
+            return task.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.awt.image.BufferedImage;
+
+
+/**
+ * The plain java {@link YuvToRgb}.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+final class ScalarYuvToRgb extends YuvToRgb {
+
+    @Override
+    void convertRow(ReformatState state, float[] y, float[] cb, float[] cr, float[] a, int width, Object data, int offset, int type) {
+        final float[] m = state.matrix;
+        if (type == BufferedImage.TYPE_4BYTE_ABGR) {
+            byte[] bytes = (byte[]) data;
+            int p = offset;
+            for (int i = 0; i < width; ++i) {
+                bytes[p++] = (byte) (a == null ? 255 : (int) (a[i] + 0.5f));
+                bytes[p++] = (byte) clamp(m[6] * y[i] + m[7] * cb[i] + m[8] * cr[i]);
+                bytes[p++] = (byte) clamp(m[3] * y[i] + m[4] * cb[i] + m[5] * cr[i]);
+                bytes[p++] = (byte) clamp(m[0] * y[i] + m[1] * cb[i] + m[2] * cr[i]);
+            }
+        } else if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            byte[] bytes = (byte[]) data;
+            int p = offset;
+            for (int i = 0; i < width; ++i) {
+                bytes[p++] = (byte) clamp(m[6] * y[i] + m[7] * cb[i] + m[8] * cr[i]);
+                bytes[p++] = (byte) clamp(m[3] * y[i] + m[4] * cb[i] + m[5] * cr[i]);
+                bytes[p++] = (byte) clamp(m[0] * y[i] + m[1] * cb[i] + m[2] * cr[i]);
+            }
+        } else {
+            int[] ints = (int[]) data;
+            for (int i = 0; i < width; ++i) {
+                int alpha = a == null ? 255 : (int) (a[i] + 0.5f);
+                int r = clamp(m[0] * y[i] + m[1] * cb[i] + m[2] * cr[i]);
+                int g = clamp(m[3] * y[i] + m[4] * cb[i] + m[5] * cr[i]);
+                int b = clamp(m[6] * y[i] + m[7] * cb[i] + m[8] * cr[i]);
+                ints[offset + i] = (alpha << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /** 0 ~ 255 rounded */
+    private static int clamp(float v) {
+        return (int) (Math.min(Math.max(v, 0f), 255f) + 0.5f);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import vavi.awt.image.jna.avif.AvifLibrary;
+import vavi.awt.image.jna.avif.avifIO;
+
+
+/**
+ * An avifIO over a stream whose bytes arrive gradually.
+ * <p>
+ * The read callback never blocks, it answers {@code AVIF_RESULT_WAITING_ON_IO}
+ * for a range which is not received yet, then the caller {@link #fill() reads}
+ * the next chunk and calls libavif again. Received bytes are kept in a native
+ * buffer which grows as needed, the io is not persistent so libavif copies
+ * what it keeps.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.incremental.chunkSize} ... max bytes read at once, default 16384</li>
+ * </ul>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+final class StreamIO {
+
+    /** */
+    private final InputStream in;
+
+    /** */
+    private final byte[] chunk;
+
+    /** received bytes */
+    private Memory buffer;
+
+    /** received size */
+    private long available;
+
+    /** */
+    private boolean eof;
+
+    /** the buffer given to libavif last, it must be alive until the next read */
+    private Memory lent;
+
+    /** keep the reference, the callback is called from native code */
+    private final AvifLibrary.avifIOReadFunc read = (io, readFlags, offset, size, out) -> {
+        if (offset > available || offset + size.longValue() > available) {
+            if (!eof) {
+                return AvifLibrary.avifResult.AVIF_RESULT_WAITING_ON_IO;
+            }
+            if (offset > available) {
+                return AvifLibrary.avifResult.AVIF_RESULT_IO_ERROR;
+            }
+        }
+        long length = Math.min(size.longValue(), available - offset);
+        lent = buffer;
+        out.data = buffer == null ? null : buffer.share(offset);
+        out.size = new NativeLong(length);
+        out.write();
+        return AvifLibrary.avifResult.AVIF_RESULT_OK;
+    };
+
+    /** set to the decoder, this must be alive until the decoder is destroyed */
+    final avifIO io = new avifIO();
+
+    /**
+     * @param sizeHint total bytes of the stream, 0 if unknown
+     */
+    StreamIO(InputStream in, long sizeHint) {
+        this.in = in;
+        this.chunk = new byte[Math.max(Integer.getInteger("vavi.awt.image.avif.incremental.chunkSize", 16384), 1)];
+        if (sizeHint > 0) {
+            buffer = new Memory(sizeHint);
+        }
+        io.read = read;
+        io.sizeHint = sizeHint;
+        io.persistent = AvifLibrary.AVIF_FALSE;
+    }
+
+    /** @return true when the whole stream is received */
+    boolean isEof() {
+        return eof;
+    }
+
+    /**
+     * Reads the next chunk, this blocks until some bytes arrive.
+     *
+     * @return false at the end of the stream
+     */
+    boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int r = in.read(chunk, 0, chunk.length);
+        if (r < 0) {
+            eof = true;
+            return false;
+        }
+        if (buffer == null || available + r > buffer.size()) {
+            Memory grown = new Memory(Math.max(buffer == null ? chunk.length : buffer.size() * 2, available + r));
+            if (available > 0) {
+                grown.getByteBuffer(0, available).put(buffer.getByteBuffer(0, available));
+            }
+            buffer = grown;
+        }
+        buffer.write(available, chunk, 0, r);
+        available += r;
+        return true;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import com.sun.jna.Pointer;
+import vavi.awt.image.jna.avif.AvifDirect;
+import vavi.awt.image.jna.avif.AvifLibrary;
+import vavi.awt.image.jna.avif.avifImage;
+
+import static vavi.awt.image.jna.avif.AvifLibrary.avifChannelIndex.AVIF_CHAN_A;
+import static vavi.awt.image.jna.avif.AvifLibrary.avifChannelIndex.AVIF_CHAN_U;
+import static vavi.awt.image.jna.avif.AvifLibrary.avifChannelIndex.AVIF_CHAN_V;
+import static vavi.awt.image.jna.avif.AvifLibrary.avifChannelIndex.AVIF_CHAN_Y;
+
+
+/**
+ * Y, U, V and alpha planes.
+ * <p>
+ * The planes are not copied and are given as read-only views. Decoded ones are slices
+ * of libavif's memory and are valid until {@link #close()}, which returns the decoder session.
+ * Samples are 8 bits when {@link #getDepth()} is 8, otherwise 16 bits in native byte order.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+public class YuvImage implements AutoCloseable {
+
+    private final int width;
+    private final int height;
+    private final int depth;
+    /** @see AvifLibrary.avifPixelFormat */
+    private final int yuvFormat;
+    /** @see AvifLibrary.avifRange */
+    private final int yuvRange;
+    /** @see AvifLibrary#AVIF_MATRIX_COEFFICIENTS_BT709 */
+    private final int matrixCoefficients;
+    /** whether color is multiplied by alpha */
+    private final boolean alphaPremultiplied;
+    /** y, u, v, a, null if absent */
+    private final ByteBuffer[] planes = new ByteBuffer[4];
+    /** y, u, v, a in bytes */
+    private final int[] rowBytes = new int[4];
+    /** called once at close */
+    private Runnable closer;
+
+    /**
+     * Wraps the decoded image.
+     *
+     * @param image a decoded image, all fields must be read
+     * @param closer releases the decoder session
+     */
+    YuvImage(avifImage image, Runnable closer) {
+        this.width = image.width;
+        this.height = image.height;
+        this.depth = image.depth;
+        this.yuvFormat = image.yuvFormat;
+        this.yuvRange = image.yuvRange;
+        this.matrixCoefficients = image.matrixCoefficients & 0xffff;
+        this.alphaPremultiplied = image.alphaPremultiplied != AvifLibrary.AVIF_FALSE;
+        this.closer = closer;
+
+        Pointer pointer = image.getPointer();
+        for (int channel : new int[] { AVIF_CHAN_Y, AVIF_CHAN_U, AVIF_CHAN_V, AVIF_CHAN_A }) {
+            Pointer plane = AvifDirect.avifImagePlane(pointer, channel);
+            if (plane == null) {
+                continue;
+            }
+            rowBytes[channel] = AvifDirect.avifImagePlaneRowBytes(pointer, channel);
+            long size = (long) rowBytes[channel] * getPlaneHeight(channel);
+            planes[channel] = plane.getByteBuffer(0, size).asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Wraps the caller's planes, e.g. for {@link Avif#encode(YuvImage, int)}.
+     * the planes are not copied, {@link #getPlane(int)} returns read-only views of them. a plane starts at the address of the buffer regardless
+     * of its position, use {@link ByteBuffer#slice()} for an offset.
+     *
+     * @param depth 8, 10 or 12, samples over 8 bits are 16 bits in native byte order
+     * @param yuvFormat {@link AvifLibrary.avifPixelFormat}
+     * @param yuvRange {@link AvifLibrary.avifRange}
+     * @param matrixCoefficients e.g. {@link AvifLibrary#AVIF_MATRIX_COEFFICIENTS_BT601}
+     * @param planes y, u, v and optional a direct buffers, u and v are ignored for 4:0:0
+     * @param rowBytes strides of the planes in bytes
+     * @throws IllegalArgumentException when a plane is missing, not direct or too small
+     */
+    public YuvImage(int width, int height, int depth, int yuvFormat, int yuvRange, int matrixCoefficients, ByteBuffer[] planes, int[] rowBytes) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.yuvFormat = yuvFormat;
+        this.yuvRange = yuvRange;
+        this.matrixCoefficients = matrixCoefficients;
+        this.alphaPremultiplied = false;
+        this.closer = () -> {};
+
+        int bytesPerSample = depth > 8 ? 2 : 1;
+        for (int channel = 0; channel < Math.min(planes.length, 4); channel++) {
+            if (yuvFormat == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV400 && (channel == AVIF_CHAN_U || channel == AVIF_CHAN_V)) {
+                continue;
+            }
+            ByteBuffer plane = planes[channel];
+            if (plane == null) {
+                if (channel == AVIF_CHAN_A) {
+                    continue;
+                }
+                throw new IllegalArgumentException("plane " + channel + " is missing");
+            }
+            if (!plane.isDirect()) {
+                throw new IllegalArgumentException("plane " + channel + " is not direct");
+            }
+            int planeWidth = getPlaneWidth(channel) * bytesPerSample;
+            if (rowBytes[channel] < planeWidth ||
+                    plane.capacity() < (long) rowBytes[channel] * (getPlaneHeight(channel) - 1) + planeWidth) {
+                throw new IllegalArgumentException(String.format("plane %d is too small: %d, stride: %d", channel, plane.capacity(), rowBytes[channel]));
+            }
+            this.planes[channel] = plane.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+            this.rowBytes[channel] = rowBytes[channel];
+        }
+        if (this.planes[AVIF_CHAN_Y] == null) {
+            throw new IllegalArgumentException("y plane is missing");
+        }
+    }
+
+    /** horizontal chroma subsampling shift */
+    private int chromaShiftX() {
+        return yuvFormat == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420 ||
+               yuvFormat == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV422 ? 1 : 0;
+    }
+
+    /** vertical chroma subsampling shift */
+    int chromaShiftY() {
+        return yuvFormat == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420 ? 1 : 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return 8, 10, 12 or 16 */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** @see AvifLibrary.avifPixelFormat */
+    public int getYuvFormat() {
+        return yuvFormat;
+    }
+
+    /** @see AvifLibrary.avifRange */
+    public int getYuvRange() {
+        return yuvRange;
+    }
+
+    /** @see AvifLibrary#AVIF_MATRIX_COEFFICIENTS_BT709 */
+    public int getMatrixCoefficients() {
+        return matrixCoefficients;
+    }
+
+    /** @return true if color samples are multiplied by alpha */
+    public boolean isAlphaPremultiplied() {
+        return alphaPremultiplied;
+    }
+
+    /** @return true if the image has an alpha plane */
+    public boolean hasAlpha() {
+        return planes[AVIF_CHAN_A] != null;
+    }
+
+    /**
+     * @param channel {@link AvifLibrary.avifChannelIndex}
+     * @return the width of the plane in samples
+     */
+    public int getPlaneWidth(int channel) {
+        return channel == AVIF_CHAN_U || channel == AVIF_CHAN_V ? (width + chromaShiftX()) >> chromaShiftX() : width;
+    }
+
+    /**
+     * @param channel {@link AvifLibrary.avifChannelIndex}
+     * @return the height of the plane in rows
+     */
+    public int getPlaneHeight(int channel) {
+        return channel == AVIF_CHAN_U || channel == AVIF_CHAN_V ? (height + chromaShiftY()) >> chromaShiftY() : height;
+    }
+
+    /**
+     * @param channel {@link AvifLibrary.avifChannelIndex}
+     * @return the stride of the plane in bytes, 0 if the plane is absent
+     */
+    public int getRowBytes(int channel) {
+        return rowBytes[channel];
+    }
+
+    /**
+     * @param channel {@link AvifLibrary.avifChannelIndex}
+     * @return a read-only view of the plane, null if the plane is absent (e.g. u, v of 4:0:0).
+     *         views must not be accessed after {@link #close()}
+     * @throws IllegalStateException when already closed
+     */
+    public ByteBuffer getPlane(int channel) {
+        if (closer == null) {
+            throw new IllegalStateException("closed");
+        }
+        return planes[channel] == null ? null : planes[channel].duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * For depth over 8. the stride in samples is {@link #getRowBytes(int)} / 2.
+     *
+     * @param channel {@link AvifLibrary.avifChannelIndex}
+     * @return a read-only view of the plane, null if the plane is absent (e.g. u, v of 4:0:0)
+     * @throws IllegalStateException when already closed or the depth is 8
+     */
+    public ShortBuffer getShortPlane(int channel) {
+        if (depth <= 8) {
+            throw new IllegalStateException("depth is " + depth);
+        }
+        ByteBuffer plane = getPlane(channel);
+        return plane == null ? null : plane.asShortBuffer();
+    }
+
+    /**
+     * Returns the decoder session, the planes must not be accessed after this.
+     */
+    @Override
+    public void close() {
+        Runnable closer = this.closer;
+        this.closer = null;
+        if (closer != null) {
+            closer.run();
+        }
+    }
+}
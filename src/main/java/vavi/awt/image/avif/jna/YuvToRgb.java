@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+
+import vavi.awt.image.jna.avif.AvifLibrary;
+
+import static java.lang.System.getLogger;
+import static vavi.awt.image.jna.avif.AvifLibrary.avifChannelIndex.AVIF_CHAN_A;
+import static vavi.awt.image.jna.avif.AvifLibrary.avifChannelIndex.AVIF_CHAN_U;
+import static vavi.awt.image.jna.avif.AvifLibrary.avifChannelIndex.AVIF_CHAN_V;
+import static vavi.awt.image.jna.avif.AvifLibrary.avifChannelIndex.AVIF_CHAN_Y;
+
+
+/**
+ * A java YUV to RGB converter, the replacement of {@code avifImageYUVToRGB}.
+ * <p>
+ * Ported from libavif's reformat.c, samples are normalized by lookup tables and
+ * the rows are written into the raster's array directly. Chroma is upsampled by
+ * the nearest neighbour ({@code AVIF_CHROMA_UPSAMPLING_FASTEST}).
+ * <p>
+ * supported
+ * <ul>
+ *  <li>depth: 8, 10, 12</li>
+ *  <li>format: 4:4:4, 4:2:2, 4:2:0, 4:0:0</li>
+ *  <li>range: limited, full</li>
+ *  <li>matrix coefficients: identity (4:4:4 only), BT.601, BT.709, BT.2020 ncl, unspecified as BT.601</li>
+ *  <li>destination: {@link BufferedImage#TYPE_4BYTE_ABGR}, {@link BufferedImage#TYPE_3BYTE_BGR}, {@link BufferedImage#TYPE_INT_ARGB}, {@link BufferedImage#TYPE_INT_RGB}</li>
+ * </ul>
+ * premultiplied alpha is not supported.
+ * <p>
+ * system properties
+ * <ul>
+ *  <li>{@code vavi.awt.image.avif.yuvToRgb.vector} ... false not to use the vector api even if {@code jdk.incubator.vector} is added, default true</li>
+ * </ul>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+public abstract class YuvToRgb {
+
+    private static final Logger logger = getLogger(YuvToRgb.class.getName());
+
+    /** */
+    YuvToRgb() {
+    }
+
+    /**
+     * Gets the best converter for the runtime, the vector api version when
+     * {@code jdk.incubator.vector} is added to the boot layer (e.g. {@code --add-modules jdk.incubator.vector}),
+     * otherwise the scalar version.
+     */
+    public static YuvToRgb getInstance() {
+        if (Boolean.parseBoolean(System.getProperty("vavi.awt.image.avif.yuvToRgb.vector", "true")) &&
+                ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (YuvToRgb) Class.forName(YuvToRgb.class.getPackageName() + ".VectorYuvToRgb").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+logger.log(Level.DEBUG, "vector api is not available: " + e);
+            }
+        }
+        return new ScalarYuvToRgb();
+    }
+
+    /**
+     * @return true if the conversion from the planes into the destination is supported
+     */
+    public static boolean isSupported(YuvImage yuv, BufferedImage dst) {
+        int depth = yuv.getDepth();
+        if (depth != 8 && depth != 10 && depth != 12) {
+            return false;
+        }
+        if (yuv.isAlphaPremultiplied()) {
+            return false;
+        }
+        switch (yuv.getMatrixCoefficients()) {
+        case AvifLibrary.AVIF_MATRIX_COEFFICIENTS_IDENTITY:
+            if (yuv.getYuvFormat() != AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV444) {
+                return false;
+            }
+            break;
+        case AvifLibrary.AVIF_MATRIX_COEFFICIENTS_BT709:
+        case AvifLibrary.AVIF_MATRIX_COEFFICIENTS_UNSPECIFIED:
+        case AvifLibrary.AVIF_MATRIX_COEFFICIENTS_BT470BG:
+        case AvifLibrary.AVIF_MATRIX_COEFFICIENTS_BT601:
+        case AvifLibrary.AVIF_MATRIX_COEFFICIENTS_BT2020_NCL:
+            break;
+        default:
+            return false;
+        }
+        switch (dst.getType()) {
+        case BufferedImage.TYPE_4BYTE_ABGR:
+        case BufferedImage.TYPE_3BYTE_BGR:
+        case BufferedImage.TYPE_INT_ARGB:
+        case BufferedImage.TYPE_INT_RGB:
+            break;
+        default:
+            return false;
+        }
+        WritableRaster raster = dst.getRaster();
+        return raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0 &&
+                raster.getDataBuffer().getOffset() == 0 &&
+                dst.getWidth() >= yuv.getWidth() && dst.getHeight() >= yuv.getHeight();
+    }
+
+    /** coefficients and lookup tables, see libavif's avifReformatState */
+    static final class ReformatState {
+        /** (r, g, b) = matrix x (y, cb, cr), row major, scaled to 0 ~ 255 */
+        final float[] matrix = new float[9];
+        /** unorm to normalized float */
+        final float[] unormFloatTableY;
+        /** unorm to normalized float */
+        final float[] unormFloatTableUV;
+        /** unorm to 0 ~ 255 */
+        final float[] unormFloatTableA;
+        final int yuvMaxChannel;
+        final int chromaShiftX;
+        final int chromaShiftY;
+        final boolean monochrome;
+
+        ReformatState(YuvImage yuv) {
+            int depth = yuv.getDepth();
+            yuvMaxChannel = (1 << depth) - 1;
+            int format = yuv.getYuvFormat();
+            monochrome = format == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV400;
+            chromaShiftX = format == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420 ||
+                           format == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV422 ? 1 : 0;
+            chromaShiftY = format == AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420 ? 1 : 0;
+
+            boolean limited = yuv.getYuvRange() == AvifLibrary.avifRange.AVIF_RANGE_LIMITED;
+            float biasY = limited ? (float) (16 << (depth - 8)) : 0.0f;
+            float biasUV = 1 << (depth - 1);
+            float rangeY = limited ? (219 << (depth - 8)) : yuvMaxChannel;
+            float rangeUV = limited ? (224 << (depth - 8)) : yuvMaxChannel;
+
+            boolean identity = yuv.getMatrixCoefficients() == AvifLibrary.AVIF_MATRIX_COEFFICIENTS_IDENTITY;
+            int cpCount = 1 << depth;
+            unormFloatTableY = new float[cpCount];
+            unormFloatTableUV = new float[cpCount];
+            unormFloatTableA = new float[cpCount];
+            for (int cp = 0; cp < cpCount; ++cp) {
+                unormFloatTableY[cp] = (cp - biasY) / rangeY;
+                unormFloatTableUV[cp] = identity ? (cp - biasY) / rangeY : (cp - biasUV) / rangeUV;
+                unormFloatTableA[cp] = cp * 255f / yuvMaxChannel;
+            }
+
+            if (identity) {
+                // GBR is packed into YUV planes directly
+                matrix[2] = 255f;
+                matrix[3] = 255f;
+                matrix[7] = 255f;
+            } else {
+                float kr, kb;
+                switch (yuv.getMatrixCoefficients()) {
+                case AvifLibrary.AVIF_MATRIX_COEFFICIENTS_BT709 -> { kr = 0.2126f; kb = 0.0722f; }
+                case AvifLibrary.AVIF_MATRIX_COEFFICIENTS_BT2020_NCL -> { kr = 0.2627f; kb = 0.0593f; }
+                default -> { kr = 0.299f; kb = 0.114f; }
+                }
+                float kg = 1.0f - kr - kb;
+                matrix[0] = 255f;
+                matrix[2] = 255f * (2 * (1 - kr));
+                matrix[3] = 255f;
+                matrix[4] = 255f * -(2 * kb * (1 - kb)) / kg;
+                matrix[5] = 255f * -(2 * kr * (1 - kr)) / kg;
+                matrix[6] = 255f;
+                matrix[7] = 255f * (2 * (1 - kb));
+            }
+        }
+    }
+
+    /** Converts all the rows. */
+    public void convert(YuvImage yuv, BufferedImage dst) {
+        convert(yuv, dst, 0, yuv.getHeight());
+    }
+
+    /**
+     * Converts the rows from y0 (inclusive) to y1 (exclusive), rows of a destination
+     * are not shared, so that different rows can be converted concurrently.
+     *
+     * @throws IllegalArgumentException when the conversion is not supported
+     * @see #isSupported(YuvImage, BufferedImage)
+     */
+    public void convert(YuvImage yuv, BufferedImage dst, int y0, int y1) {
+        if (!isSupported(yuv, dst)) {
+            throw new IllegalArgumentException(String.format("not supported: depth: %d, format: %d, matrix: %d, type: %d",
+                    yuv.getDepth(), yuv.getYuvFormat(), yuv.getMatrixCoefficients(), dst.getType()));
+        }
+        ReformatState state = new ReformatState(yuv);
+        int width = yuv.getWidth();
+        boolean wide = yuv.getDepth() > 8;
+
+        float[] y = new float[width];
+        float[] cb = new float[width];
+        float[] cr = new float[width];
+        float[] a = yuv.hasAlpha() && dst.getColorModel().hasAlpha() ? new float[width] : null;
+
+        ByteBuffer yPlane = yuv.getPlane(AVIF_CHAN_Y);
+        ByteBuffer uPlane = state.monochrome ? null : yuv.getPlane(AVIF_CHAN_U);
+        ByteBuffer vPlane = state.monochrome ? null : yuv.getPlane(AVIF_CHAN_V);
+        ByteBuffer aPlane = a == null ? null : yuv.getPlane(AVIF_CHAN_A);
+
+        SampleModel sampleModel = dst.getRaster().getSampleModel();
+        Object data;
+        int stride;
+        if (dst.getType() == BufferedImage.TYPE_4BYTE_ABGR || dst.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            data = ((DataBufferByte) dst.getRaster().getDataBuffer()).getData();
+            stride = ((ComponentSampleModel) sampleModel).getScanlineStride();
+        } else {
+            data = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+            stride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+        }
+
+        for (int j = y0; j < y1; ++j) {
+            loadRow(yPlane, yuv.getRowBytes(AVIF_CHAN_Y) * j, 0, width, wide, state.yuvMaxChannel, state.unormFloatTableY, y);
+            if (!state.monochrome) {
+                int uvJ = j >> state.chromaShiftY;
+                loadRow(uPlane, yuv.getRowBytes(AVIF_CHAN_U) * uvJ, state.chromaShiftX, width, wide, state.yuvMaxChannel, state.unormFloatTableUV, cb);
+                loadRow(vPlane, yuv.getRowBytes(AVIF_CHAN_V) * uvJ, state.chromaShiftX, width, wide, state.yuvMaxChannel, state.unormFloatTableUV, cr);
+            }
+            if (a != null) {
+                loadRow(aPlane, yuv.getRowBytes(AVIF_CHAN_A) * j, 0, width, wide, state.yuvMaxChannel, state.unormFloatTableA, a);
+            }
+            convertRow(state, y, cb, cr, a, width, data, j * stride, dst.getType());
+        }
+    }
+
+    /** Normalizes a row of the plane by the table. */
+    void loadRow(ByteBuffer plane, int offset, int shiftX, int width, boolean wide, int max, float[] table, float[] row) {
+        if (wide) {
+            for (int i = 0; i < width; ++i) {
+                // clamp incoming data to protect against bad LUT lookups
+                row[i] = table[Math.min(plane.getShort(offset + ((i >> shiftX) << 1)) & 0xffff, max)];
+            }
+        } else {
+            for (int i = 0; i < width; ++i) {
+                row[i] = table[plane.get(offset + (i >> shiftX)) & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Converts a normalized row and writes it into the raster's array.
+     *
+     * @param a 0 ~ 255, null for opaque
+     * @param data byte[] for {@link BufferedImage#TYPE_4BYTE_ABGR} and {@link BufferedImage#TYPE_3BYTE_BGR}, int[] for others
+     * @param offset the start of the row in data
+     * @param type the destination type
+     */
+    abstract void convertRow(ReformatState state, float[] y, float[] cb, float[] cr, float[] a, int width, Object data, int offset, int type);
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.jna.avif;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+
+/**
+ * Direct mapped hot functions of libavif.
+ * <p>
+ * Unlike {@link AvifLibrary}, calls don't go through a reflective proxy and
+ * structures are passed as bare pointers, nothing is synchronized automatically.
+ * Callers must write the fields they changed before a call (e.g. {@code Structure#writeField(String)})
+ * and read the fields they need after it.
+ * <p>
+ * Note that jna writes a {@code Structure.ByReference} field's structure when the
+ * outer structure is auto-written, so a structure which libavif updates through
+ * these functions should have auto-write disabled, otherwise stale java side values
+ * are written back by the next {@link AvifLibrary} call.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+public final class AvifDirect {
+
+    static {
+        Native.register(AvifDirect.class, AvifLibrary.JNA_NATIVE_LIB);
+    }
+
+    private AvifDirect() {
+    }
+
+    /**
+     * Original signature : <code>avifResult avifImageYUVToRGB(const avifImage*, avifRGBImage*)</code><br>
+     * @see AvifLibrary#avifImageYUVToRGB(avifImage, avifRGBImage)
+     */
+    public static native int avifImageYUVToRGB(Pointer image, Pointer rgb);
+
+    /**
+     * Original signature : <code>avifResult avifImageRGBToYUV(avifImage*, const avifRGBImage*)</code><br>
+     * @see AvifLibrary#avifImageRGBToYUV(avifImage, avifRGBImage)
+     */
+    public static native int avifImageRGBToYUV(Pointer image, Pointer rgb);
+
+    /**
+     * Original signature : <code>void avifDecoderSetIO(avifDecoder*, avifIO*)</code><br>
+     * @see AvifLibrary#avifDecoderSetIO(avifDecoder, avifIO)
+     */
+    public static native void avifDecoderSetIO(Pointer decoder, Pointer io);
+
+    /**
+     * Original signature : <code>avifResult avifDecoderSetIOMemory(avifDecoder*, const uint8_t*, size_t)</code><br>
+     * @see AvifLibrary#avifDecoderSetIOMemory(avifDecoder, Pointer, NativeLong)
+     */
+    public static native int avifDecoderSetIOMemory(Pointer decoder, Pointer data, NativeLong size);
+
+    /**
+     * Original signature : <code>avifResult avifDecoderParse(avifDecoder*)</code><br>
+     * @see AvifLibrary#avifDecoderParse(avifDecoder)
+     */
+    public static native int avifDecoderParse(Pointer decoder);
+
+    /**
+     * Original signature : <code>avifResult avifDecoderNextImage(avifDecoder*)</code><br>
+     * @see AvifLibrary#avifDecoderNextImage(avifDecoder)
+     */
+    public static native int avifDecoderNextImage(Pointer decoder);
+
+    /**
+     * Original signature : <code>avifResult avifDecoderNthImage(avifDecoder*, uint32_t)</code><br>
+     * @see AvifLibrary#avifDecoderNthImage(avifDecoder, int)
+     */
+    public static native int avifDecoderNthImage(Pointer decoder, int frameIndex);
+
+    /**
+     * Original signature : <code>uint8_t* avifImagePlane(const avifImage*, int)</code><br>
+     * @param channel {@link AvifLibrary.avifChannelIndex}
+     * @see AvifLibrary#avifImagePlane(avifImage, int)
+     */
+    public static native Pointer avifImagePlane(Pointer image, int channel);
+
+    /**
+     * Original signature : <code>uint32_t avifImagePlaneRowBytes(const avifImage*, int)</code><br>
+     * @param channel {@link AvifLibrary.avifChannelIndex}
+     * @see AvifLibrary#avifImagePlaneRowBytes(avifImage, int)
+     */
+    public static native int avifImagePlaneRowBytes(Pointer image, int channel);
+
+    /**
+     * Original signature : <code>avifResult avifImageSetViewRect(avifImage*, const avifImage*, const avifCropRect*)</code><br>
+     * @see AvifLibrary#avifImageSetViewRect(avifImage, avifImage, avifCropRect)
+     */
+    public static native int avifImageSetViewRect(Pointer dstImage, Pointer srcImage, Pointer rect);
+
+    /**
+     * Original signature : <code>uint32_t avifDecoderDecodedRowCount(const avifDecoder*)</code><br>
+     * @see AvifLibrary#avifDecoderDecodedRowCount(avifDecoder)
+     */
+    public static native int avifDecoderDecodedRowCount(Pointer decoder);
+}
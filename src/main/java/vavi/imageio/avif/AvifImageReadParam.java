@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.imageio.avif;
+
+import javax.imageio.ImageReadParam;
+
+import vavi.awt.image.avif.jna.DecodeOptions;
+import vavi.awt.image.jna.avif.AvifLibrary;
+
+
+/**
+ * AvifImageReadParam.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ * @see DecodeOptions
+ */
+public class AvifImageReadParam extends ImageReadParam {
+
+    /** */
+    private final DecodeOptions options = new DecodeOptions();
+
+    /**
+     * @param chromaUpsampling {@link AvifLibrary.avifChromaUpsampling}, default automatic
+     * @throws IllegalArgumentException when the value is out of the enum
+     */
+    public void setChromaUpsampling(int chromaUpsampling) {
+        options.setChromaUpsampling(chromaUpsampling);
+    }
+
+    /** @return {@link AvifLibrary.avifChromaUpsampling} */
+    public int getChromaUpsampling() {
+        return options.getChromaUpsampling();
+    }
+
+    /** @param avoidLibYUV true not to use libyuv's fast paths */
+    public void setAvoidLibYUV(boolean avoidLibYUV) {
+        options.setAvoidLibYUV(avoidLibYUV);
+    }
+
+    /** @return true if libyuv is not used */
+    public boolean isAvoidLibYUV() {
+        return options.isAvoidLibYUV();
+    }
+
+    /**
+     * @param codecChoice {@link AvifLibrary.avifCodecChoice}, default automatic
+     * @throws IllegalArgumentException when the value is out of the enum
+     */
+    public void setCodecChoice(int codecChoice) {
+        options.setCodecChoice(codecChoice);
+    }
+
+    /** @return {@link AvifLibrary.avifCodecChoice} */
+    public int getCodecChoice() {
+        return options.getCodecChoice();
+    }
+
+    /** @return null when all are the defaults */
+    DecodeOptions getOptions() {
+        if (options.getChromaUpsampling() == AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_AUTOMATIC &&
+                !options.isAvoidLibYUV() &&
+                options.getCodecChoice() == AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO) {
+            return null;
+        }
+        return options;
+    }
+}
@@ -8,23 +8,32 @@ package vavi.imageio.avif;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.IntStream;
 import javax.imageio.IIOException;
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 
+import vavi.awt.image.avif.AvifInfo;
+import vavi.awt.image.avif.AvifParser;
 import vavi.awt.image.avif.jna.Avif;
+import vavi.awt.image.avif.jna.DecodeOptions;
 import vavi.imageio.WrappedImageInputStream;
 
 import static java.lang.System.getLogger;
@@ -32,6 +41,10 @@ import static java.lang.System.getLogger;
 
 /**
  * AvifImageReader.
+ * <p>
+ * dimensions and the number of images are parsed by {@link AvifParser} without libavif.
+ * thumbnails are the items which refer the primary item by iref thmb, only the thumbnail
+ * item is decoded for {@link #readThumbnail(int, int)}.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
  * @version 0.00 2022-09-07 umjammer initial version <br>
@@ -43,19 +56,57 @@ public class AvifImageReader extends ImageReader {
     /** */
     private BufferedImage image;
 
+    /** parsed boxes of the input, null until queried */
+    private AvifInfo info;
+
     /** */
     public AvifImageReader(ImageReaderSpi originatingProvider) {
         super(originatingProvider);
     }
 
+    @Override
+    public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
+        super.setInput(input, seekForwardOnly, ignoreMetadata);
+        image = null;
+        info = null;
+    }
+
+    /**
+     * Parses the boxes of the input, the result is kept until the input is changed.
+     * the position of the input is not changed.
+     */
+    private AvifInfo info() throws IIOException {
+        if (info == null) {
+            try {
+                if (input instanceof File file) {
+                    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        info = AvifParser.parse(channel);
+                    }
+                } else if (input instanceof Path path) {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        info = AvifParser.parse(channel);
+                    }
+                } else if (input instanceof ImageInputStream stream) {
+                    info = AvifParser.parse(stream);
+                } else {
+                    throw new IllegalStateException("no input");
+                }
+            } catch (IOException e) {
+                throw new IIOException(e.getMessage(), e);
+            }
+logger.log(Level.DEBUG, info);
+        }
+        return info;
+    }
+
     @Override
     public int getNumImages(boolean allowSearch) throws IIOException {
-        return 1;
+        return info().getFrameCount();
     }
 
     /** */
-    private static void checkIndex(int imageIndex) {
-        if (imageIndex != 0) {
+    private void checkIndex(int imageIndex) throws IIOException {
+        if (imageIndex < 0 || imageIndex >= getNumImages(false)) {
             throw new IndexOutOfBoundsException("bad index");
         }
     }
@@ -63,13 +114,13 @@ public class AvifImageReader extends ImageReader {
     @Override
     public int getWidth(int imageIndex) throws IIOException {
         checkIndex(imageIndex);
-        return image.getWidth();
+        return info().getWidth();
     }
 
     @Override
     public int getHeight(int imageIndex) throws IIOException {
         checkIndex(imageIndex);
-        return image.getHeight();
+        return info().getHeight();
     }
 
     @Override
@@ -78,29 +129,192 @@ public class AvifImageReader extends ImageReader {
 
 logger.log(Level.DEBUG,"decode start");
 long t = System.currentTimeMillis();
-        InputStream stream = new WrappedImageInputStream((ImageInputStream) input);
+        try {
+            DecodeOptions options = param instanceof AvifImageReadParam avifParam ? avifParam.getOptions() : null;
+            if (imageIndex != 0) {
+                checkIndex(imageIndex);
+            } else if (updateListeners != null && options == null && (param == null || (param.getDestination() == null && param.getDestinationType() == null)) && input instanceof ImageInputStream stream && !(input instanceof FileImageInputStream)) {
+                image = readIncrementally(stream);
+                return image;
+            }
+
+            BufferedImage destination = destination(imageIndex, param);
+
+            ByteBuffer bb = encoded();
+            int l = bb.remaining();
+logger.log(Level.DEBUG,"size: {0} bytes", l);
+
+            Avif avif = Avif.getInstance();
+
+            if (options != null) {
+                image = avif.decodeFrame(bb, l, imageIndex, destination, options);
+            } else if (destination != null) {
+                image = avif.decodeFrame(bb, l, imageIndex, destination);
+            } else {
+                image = imageIndex == 0 ? avif.decode(bb, l) : avif.decodeFrame(bb, l, imageIndex);
+            }
+            return image;
+        } catch (IOException e) {
+            throw new IIOException(e.getMessage(), e);
+} finally {
+logger.log(Level.DEBUG,"time: {0} ms", System.currentTimeMillis() - t);
+        }
+    }
+
+    @Override
+    public ImageReadParam getDefaultReadParam() {
+        return new AvifImageReadParam();
+    }
 
+    @Override
+    public boolean readerSupportsThumbnails() {
+        return true;
+    }
+
+    @Override
+    public int getNumThumbnails(int imageIndex) throws IIOException {
+        checkIndex(imageIndex);
+        return imageIndex == 0 ? info().getThumbnailItemIds().size() : 0;
+    }
+
+    /**
+     * Decodes only the thumbnail item (iref thmb), the primary item is not decoded.
+     */
+    @Override
+    public BufferedImage readThumbnail(int imageIndex, int thumbnailIndex) throws IIOException {
+        if (thumbnailIndex < 0 || thumbnailIndex >= getNumThumbnails(imageIndex)) {
+            throw new IndexOutOfBoundsException("bad thumbnail index");
+        }
+        int itemId = info().getThumbnailItemIds().get(thumbnailIndex);
+        processThumbnailStarted(imageIndex, thumbnailIndex);
         try {
+            ByteBuffer bb;
+            if (input instanceof ImageInputStream stream) {
+                // keep the stream for the image itself
+                stream.mark();
+                try {
+                    bb = encoded();
+                } finally {
+                    stream.reset();
+                }
+            } else {
+                bb = encoded();
+            }
+            ByteBuffer thumbnail = AvifParser.withPrimaryItem(bb, itemId);
+            BufferedImage image = Avif.getInstance().decode(thumbnail, thumbnail.capacity());
+            processThumbnailComplete();
+            return image;
+        } catch (IOException e) {
+            throw new IIOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the destination of the param, e.g. {@link BufferedImage#TYPE_INT_ARGB_PRE} for
+     * premultiplied pixels.
+     *
+     * @return null for the default type
+     */
+    private BufferedImage destination(int imageIndex, ImageReadParam param) throws IIOException {
+        if (param == null) {
+            return null;
+        } else if (param.getDestination() != null) {
+            return param.getDestination();
+        } else if (param.getDestinationType() != null) {
+            return param.getDestinationType().createBufferedImage(getWidth(imageIndex), getHeight(imageIndex));
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes while the stream is arriving, for update listeners.
+     * decoded rows are notified by {@link javax.imageio.event.IIOReadUpdateListener#imageUpdate},
+     * each layer of a progressive image is a pass.
+     */
+    private BufferedImage readIncrementally(ImageInputStream stream) throws IOException {
+        long length = stream.length();
+        long sizeHint = length >= 0 ? length - stream.getStreamPosition() : 0;
+        processImageStarted(0);
+        BufferedImage image = Avif.getInstance().decode(new WrappedImageInputStream(stream), sizeHint, new Avif.DecodeListener() {
+            int layers;
+            int layer;
+            /** 3 for an opaque image, 4 with alpha */
+            int[] bands;
+            @Override public void layerStarted(BufferedImage image, int layer, int layers) {
+                this.layer = layer;
+                this.layers = layers;
+                this.bands = IntStream.range(0, image.getRaster().getNumBands()).toArray();
+                processPassStarted(image, layer, 0, layers - 1, 0, 0, 1, 1, bands);
+            }
+            @Override public void rowsDecoded(BufferedImage image, int y0, int y1) {
+                processImageUpdate(image, 0, y0, image.getWidth(), y1 - y0, 1, 1, bands);
+                processImageProgress(100f * (layer * image.getHeight() + y1) / (layers * image.getHeight()));
+            }
+            @Override public void layerDecoded(BufferedImage image, int layer, int layers) {
+                processPassComplete(image);
+            }
+        });
+        processImageComplete();
+        return image;
+    }
+
+    /**
+     * Gets the encoded image as a direct buffer.
+     * <p>
+     * file inputs are mapped read-only without java side buffering, it includes
+     * {@code ImageIO.read(File)} by {@link MappableFileImageInputStreamSpi}.
+     * other streams are read into a direct buffer, e.g. {@link javax.imageio.stream.FileCacheImageInputStream}
+     * whose cache file only has the bytes read so far.
+     */
+    private ByteBuffer encoded() throws IOException {
+        if (input instanceof File file) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return Avif.map(channel, 0);
+            }
+        } else if (input instanceof Path path) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return Avif.map(channel, 0);
+            }
+        } else if (input instanceof MappableFileImageInputStream stream) {
+            try (FileChannel channel = FileChannel.open(stream.getFile().toPath(), StandardOpenOption.READ)) {
+logger.log(Level.DEBUG, "map " + stream.getFile());
+                ByteBuffer bb = Avif.map(channel, stream.getStreamPosition());
+                // consumed as the other streams are
+                stream.seek(stream.getStreamPosition() + bb.capacity());
+                return bb;
+            }
+        }
+
+        ImageInputStream stream = (ImageInputStream) input;
+        long length = stream.length();
+        if (length >= 0) {
+            // the size is known, read into a direct buffer at once
+            long size = length - stream.getStreamPosition();
+            if (size > Integer.MAX_VALUE) {
+                throw new IIOException("too large: " + size);
+            }
+            ByteBuffer bb = ByteBuffer.allocateDirect((int) size);
+            byte[] b = new byte[8192];
+            while (bb.hasRemaining()) {
+                int r = stream.read(b, 0, Math.min(b.length, bb.remaining()));
+                if (r < 0) break;
+                bb.put(b, 0, r);
+            }
+            return bb.flip();
+        } else {
+            InputStream is = new WrappedImageInputStream(stream);
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             byte[] b = new byte[8192];
             while (true) {
-                int r = stream.read(b, 0, b.length);
+                int r = is.read(b, 0, b.length);
                 if (r < 0) break;
                 baos.write(b, 0, r);
             }
             int l = baos.size();
-logger.log(Level.DEBUG,"size: {0} bytes", l);
             ByteBuffer bb = ByteBuffer.allocateDirect(l);
             bb.put(baos.toByteArray(), 0, l);
-
-            Avif avif = Avif.getInstance();
-
-            image = avif.getCompatibleImage(bb, l);
-            return avif.decode(bb, l, image);
-        } catch (IOException e) {
-            throw new IIOException(e.getMessage(), e);
-} finally {
-logger.log(Level.DEBUG,"time: {0} ms", System.currentTimeMillis() - t);
+            return bb.flip();
         }
     }
 
@@ -118,9 +332,14 @@ logger.log(Level.DEBUG,"time: {0} ms", System.currentTimeMillis() - t);
     @Override
     public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) throws IIOException {
         checkIndex(imageIndex);
-        ImageTypeSpecifier specifier = null;
+        // the first one is the default, an opaque image is decoded into 3 bytes pixels
+        int[] types = info().hasAlpha() ?
+                new int[] {BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_4BYTE_ABGR_PRE, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE} :
+                new int[] {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_USHORT_565_RGB};
         List<ImageTypeSpecifier> l = new ArrayList<>();
-        l.add(specifier);
+        for (int type : types) {
+            l.add(ImageTypeSpecifier.createFromBufferedImageType(type));
+        }
         return l.iterator();
     }
 }
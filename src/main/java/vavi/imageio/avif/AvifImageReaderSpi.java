@@ -6,19 +6,23 @@
 
 package vavi.imageio.avif;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Locale;
 import java.util.Properties;
 import javax.imageio.ImageReader;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
 
-import vavi.awt.image.avif.jna.Avif;
+import vavi.awt.image.avif.AvifParser;
 
 import static java.lang.System.getLogger;
 
@@ -74,6 +78,9 @@ public class AvifImageReaderSpi extends ImageReaderSpi {
     private static final String[] ExtraImageMetadataFormatNames = null;
     private static final String[] ExtraImageMetadataFormatClassNames = null;
 
+    /** bytes read to check the ftyp box */
+    private static final int HEADER_SIZE = 64;
+
     /** */
     public AvifImageReaderSpi() {
         super(VendorName,
@@ -82,7 +89,7 @@ public class AvifImageReaderSpi extends ImageReaderSpi {
               Suffixes,
               mimeTypes,
               ReaderClassName,
-              new Class[] { ImageInputStream.class },
+              new Class[] { ImageInputStream.class, File.class, Path.class },
               WriterSpiNames,
               SupportsStandardStreamMetadataFormat,
               NativeStreamMetadataFormatName,
@@ -105,20 +112,31 @@ public class AvifImageReaderSpi extends ImageReaderSpi {
     public boolean canDecodeInput(Object obj) throws IOException {
 logger.log(Level.DEBUG,"input: " + obj);
         if (obj instanceof ImageInputStream stream) {
+            byte[] b = new byte[HEADER_SIZE];
             stream.mark();
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] b = new byte[8192];
-            while (true) {
-                int r = stream.read(b, 0, b.length);
-                if (r < 0) break;
-                baos.write(b, 0, r);
+            int l = 0;
+            try {
+                while (l < b.length) {
+                    int r = stream.read(b, l, b.length - l);
+                    if (r < 0) break;
+                    l += r;
+                }
+            } finally {
+                stream.reset();
+            }
+            return AvifParser.isAvif(ByteBuffer.wrap(b, 0, l));
+        } else if (obj instanceof File || obj instanceof Path) {
+            Path path = obj instanceof File file ? file.toPath() : (Path) obj;
+            if (!Files.isRegularFile(path)) {
+                return false;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE);
+                while (bb.hasRemaining()) {
+                    if (channel.read(bb) < 0) break;
+                }
+                return AvifParser.isAvif(bb.flip());
             }
-            int l = baos.size();
-logger.log(Level.DEBUG,"size: " + l);
-            ByteBuffer bb = ByteBuffer.allocateDirect(l);
-            bb.put(baos.toByteArray(), 0, l);
-            stream.reset();
-            return Avif.isAvifImage(bb, l);
         } else {
             return false;
         }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.imageio.avif;
+
+import java.util.Locale;
+import java.util.Map;
+import javax.imageio.ImageWriteParam;
+
+import vavi.awt.image.avif.jna.EncodeOptions;
+import vavi.awt.image.jna.avif.AvifLibrary;
+
+
+/**
+ * AvifImageWriteParam.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ * @see EncodeOptions
+ */
+public class AvifImageWriteParam extends ImageWriteParam {
+
+    /** */
+    private final EncodeOptions options = new EncodeOptions();
+
+    /** */
+    private int maxBytes;
+
+    /** */
+    public AvifImageWriteParam(Locale locale) {
+        super(locale);
+    }
+
+    /**
+     * @param yuvFormat {@link AvifLibrary.avifPixelFormat} 444, 422 or 420, default 444
+     * @throws IllegalArgumentException when the value is not one of them
+     */
+    public void setYuvFormat(int yuvFormat) {
+        options.setYuvFormat(yuvFormat);
+    }
+
+    /** @return {@link AvifLibrary.avifPixelFormat} */
+    public int getYuvFormat() {
+        return options.getYuvFormat();
+    }
+
+    /**
+     * @param chromaDownsampling {@link AvifLibrary.avifChromaDownsampling}, default automatic
+     * @throws IllegalArgumentException when the value is out of the enum
+     */
+    public void setChromaDownsampling(int chromaDownsampling) {
+        options.setChromaDownsampling(chromaDownsampling);
+    }
+
+    /** @return {@link AvifLibrary.avifChromaDownsampling} */
+    public int getChromaDownsampling() {
+        return options.getChromaDownsampling();
+    }
+
+    /**
+     * @param codecChoice {@link AvifLibrary.avifCodecChoice}, default automatic
+     * @throws IllegalArgumentException when the value is out of the enum
+     */
+    public void setCodecChoice(int codecChoice) {
+        options.setCodecChoice(codecChoice);
+    }
+
+    /** @return {@link AvifLibrary.avifCodecChoice} */
+    public int getCodecChoice() {
+        return options.getCodecChoice();
+    }
+
+    /**
+     * @param lossless true to encode bit-exact, the yuv format and the chroma downsampling are ignored
+     * @see EncodeOptions#setLossless(boolean)
+     */
+    public void setLossless(boolean lossless) {
+        options.setLossless(lossless);
+    }
+
+    /** @return true if the pixels are encoded bit-exact */
+    public boolean isLossless() {
+        return options.isLossless();
+    }
+
+    /**
+     * @param options options of the AV1 encoder, e.g. "tune" = "ssim" for aom
+     * @throws IllegalArgumentException when a key is bad or a value is null
+     * @see EncodeOptions#setCodecSpecificOption(String, String)
+     */
+    public void setCodecSpecificOptions(Map<String, String> options) {
+        this.options.setCodecSpecificOptions(options);
+    }
+
+    /** @return options of the AV1 encoder, unmodifiable */
+    public Map<String, String> getCodecSpecificOptions() {
+        return options.getCodecSpecificOptions();
+    }
+
+    /**
+     * @param maxBytes the budget of the encoded size, the quality is searched to fit in it,
+     *                 0 for the fixed quality, default 0
+     * @throws IllegalArgumentException when the value is negative
+     * @see vavi.awt.image.avif.jna.Avif#encodeToSize(java.awt.image.BufferedImage, int, EncodeOptions)
+     */
+    public void setMaxBytes(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /** @return the budget of the encoded size, 0 for the fixed quality */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** */
+    EncodeOptions getOptions() {
+        return options;
+    }
+}
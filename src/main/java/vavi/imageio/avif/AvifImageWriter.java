@@ -52,6 +52,11 @@ public class AvifImageWriter extends ImageWriter {
         super(originatingProvider);
     }
 
+    @Override
+    public ImageWriteParam getDefaultWriteParam() {
+        return new AvifImageWriteParam(getLocale());
+    }
+
     @Override
     public IIOMetadata getDefaultStreamMetadata(ImageWriteParam param) {
         return null;
@@ -77,11 +82,16 @@ public class AvifImageWriter extends ImageWriter {
 long t = System.currentTimeMillis();
         try {
             Avif avif = Avif.getInstance();
-            ByteBuffer bn = avif.encode((BufferedImage) image.getRenderedImage(), 60);
-            ByteBuffer bb = ByteBuffer.allocate(bn.capacity());
-            bb.put(bn);
+            ByteBuffer bb;
+            if (param instanceof AvifImageWriteParam p) {
+                bb = p.getMaxBytes() > 0 ?
+                        avif.encodeToSize((BufferedImage) image.getRenderedImage(), p.getMaxBytes(), p.getOptions()) :
+                        avif.encode((BufferedImage) image.getRenderedImage(), 60, p.getOptions());
+            } else {
+                bb = avif.encode((BufferedImage) image.getRenderedImage(), 60);
+            }
             ImageOutputStream ios = (ImageOutputStream) output;
-            ios.write(bb.array());
+            ios.write(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
             ios.flush();
         } finally {
 logger.log(Level.DEBUG,"time: " + (System.currentTimeMillis() - t));
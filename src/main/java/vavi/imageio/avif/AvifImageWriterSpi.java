@@ -85,7 +85,8 @@ public class AvifImageWriterSpi extends ImageWriterSpi {
 
     @Override
     public boolean canEncodeImage(ImageTypeSpecifier type) {
-        return type.getBufferedImageType() == BufferedImage.TYPE_4BYTE_ABGR;
+        return type.getBufferedImageType() == BufferedImage.TYPE_4BYTE_ABGR ||
+                type.getBufferedImageType() == BufferedImage.TYPE_3BYTE_BGR;
     }
 
     @Override
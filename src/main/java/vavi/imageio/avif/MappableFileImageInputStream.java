@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.imageio.avif;
+
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.stream.FileImageInputStream;
+
+
+/**
+ * A {@link FileImageInputStream} which remembers its file.
+ * <p>
+ * It reads the same as {@link FileImageInputStream}, {@link AvifImageReader}
+ * maps the file instead of reading the stream.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ * @see MappableFileImageInputStreamSpi
+ */
+final class MappableFileImageInputStream extends FileImageInputStream {
+
+    /** */
+    private final File file;
+
+    /** */
+    MappableFileImageInputStream(File file) throws IOException {
+        super(file);
+        this.file = file;
+    }
+
+    /** @return the file of this stream */
+    File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.imageio.avif;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.Iterator;
+import java.util.Locale;
+import javax.imageio.spi.ImageInputStreamSpi;
+import javax.imageio.spi.ServiceRegistry;
+import javax.imageio.stream.ImageInputStream;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * Creates {@link MappableFileImageInputStream}s for {@link File}s.
+ * <p>
+ * {@code ImageIO.read(File)} wraps the file in an image input stream before a reader
+ * sees it. This spi is ordered before the jdk's one for files, so that {@link AvifImageReader}
+ * knows the file and maps it without reading the stream. Streams of the other formats
+ * read the same as the jdk's {@link javax.imageio.stream.FileImageInputStream}.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+public class MappableFileImageInputStreamSpi extends ImageInputStreamSpi {
+
+    private static final Logger logger = getLogger(MappableFileImageInputStreamSpi.class.getName());
+
+    /** */
+    public MappableFileImageInputStreamSpi() {
+        super("https://github.com/umjammer/vavi-image-avif", "1.0", File.class);
+    }
+
+    @Override
+    public void onRegistration(ServiceRegistry registry, Class<?> category) {
+        Iterator<ImageInputStreamSpi> i = registry.getServiceProviders(ImageInputStreamSpi.class, false);
+        while (i.hasNext()) {
+            ImageInputStreamSpi spi = i.next();
+            if (spi != this && spi.getInputClass() == File.class) {
+logger.log(Level.DEBUG, "ordered before " + spi.getClass().getName());
+                registry.setOrdering(ImageInputStreamSpi.class, this, spi);
+            }
+        }
+    }
+
+    @Override
+    public String getDescription(Locale locale) {
+        return "File image input stream which can be mapped by the AVIF reader";
+    }
+
+    @Override
+    public ImageInputStream createInputStreamInstance(Object input, boolean useCache, File cacheDir) throws IOException {
+        if (input instanceof File file) {
+            try {
+                return new MappableFileImageInputStream(file);
+            } catch (IOException e) {
+                // same as the jdk's one
+logger.log(Level.DEBUG, e);
+                return null;
+            }
+        }
+        throw new IllegalArgumentException("not a file: " + input);
+    }
+}
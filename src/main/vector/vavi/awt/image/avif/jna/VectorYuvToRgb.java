@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.awt.image.avif.jna;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * The {@link YuvToRgb} built on {@code jdk.incubator.vector}.
+ * <p>
+ * This class is loaded reflectively by {@link YuvToRgb#getInstance()} only when
+ * the module is added, don't refer it directly. the source is compiled separately
+ * with the module (source: {@code src/main/vector}).
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-19 nsano initial version <br>
+ */
+final class VectorYuvToRgb extends YuvToRgb {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /** the same number of lanes as {@link #SPECIES} */
+    private static final VectorSpecies<Integer> INT_SPECIES = SPECIES.vectorShape().withLanes(int.class);
+
+    /** packed pixels of a row, for the byte destination */
+    private final ThreadLocal<int[]> packed = ThreadLocal.withInitial(() -> new int[0]);
+
+    /** samples of a row */
+    private final ThreadLocal<int[]> samples = ThreadLocal.withInitial(() -> new int[0]);
+
+    @Override
+    void loadRow(ByteBuffer plane, int offset, int shiftX, int width, boolean wide, int max, float[] table, float[] row) {
+        int[] s = samples.get();
+        if (s.length < width) {
+            s = new int[width];
+            samples.set(s);
+        }
+        // subsampled chroma is repeated per column, so samples are picked one by one
+        if (wide) {
+            for (int i = 0; i < width; ++i) {
+                s[i] = plane.getShort(offset + ((i >> shiftX) << 1)) & 0xffff;
+            }
+        } else {
+            for (int i = 0; i < width; ++i) {
+                s[i] = plane.get(offset + (i >> shiftX)) & 0xff;
+            }
+        }
+
+        IntVector vmax = IntVector.broadcast(INT_SPECIES, max);
+        int bound = SPECIES.loopBound(width);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            // clamp incoming data to protect against bad LUT lookups
+            IntVector.fromArray(INT_SPECIES, s, i).min(vmax).intoArray(s, i);
+            FloatVector.fromArray(SPECIES, table, 0, s, i).intoArray(row, i);
+        }
+        for (; i < width; ++i) {
+            row[i] = table[Math.min(s[i], max)];
+        }
+    }
+
+    @Override
+    void convertRow(ReformatState state, float[] y, float[] cb, float[] cr, float[] a, int width, Object data, int offset, int type) {
+        int[] ints;
+        int base;
+        boolean bytes = type == BufferedImage.TYPE_4BYTE_ABGR || type == BufferedImage.TYPE_3BYTE_BGR;
+        if (bytes) {
+            ints = packed.get();
+            if (ints.length < width) {
+                ints = new int[width];
+                packed.set(ints);
+            }
+            base = 0;
+        } else {
+            ints = (int[]) data;
+            base = offset;
+        }
+
+        final float[] m = state.matrix;
+        FloatVector zero = FloatVector.zero(SPECIES);
+        FloatVector max = FloatVector.broadcast(SPECIES, 255f);
+        FloatVector half = FloatVector.broadcast(SPECIES, 0.5f);
+        IntVector opaque = IntVector.broadcast(INT_SPECIES, 255 << 24);
+
+        int bound = SPECIES.loopBound(width);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector vcb = FloatVector.fromArray(SPECIES, cb, i);
+            FloatVector vcr = FloatVector.fromArray(SPECIES, cr, i);
+            IntVector r = toInt(vy.mul(m[0]).add(vcb.mul(m[1])).add(vcr.mul(m[2])), zero, max, half);
+            IntVector g = toInt(vy.mul(m[3]).add(vcb.mul(m[4])).add(vcr.mul(m[5])), zero, max, half);
+            IntVector b = toInt(vy.mul(m[6]).add(vcb.mul(m[7])).add(vcr.mul(m[8])), zero, max, half);
+            IntVector alpha = a == null ? opaque : toInt(FloatVector.fromArray(SPECIES, a, i), zero, max, half).lanewise(VectorOperators.LSHL, 24);
+            alpha.or(r.lanewise(VectorOperators.LSHL, 16))
+                 .or(g.lanewise(VectorOperators.LSHL, 8))
+                 .or(b)
+                 .intoArray(ints, base + i);
+        }
+        for (; i < width; ++i) {
+            int alpha = a == null ? 255 : (int) (a[i] + 0.5f);
+            int r = clamp(m[0] * y[i] + m[1] * cb[i] + m[2] * cr[i]);
+            int g = clamp(m[3] * y[i] + m[4] * cb[i] + m[5] * cr[i]);
+            int b = clamp(m[6] * y[i] + m[7] * cb[i] + m[8] * cr[i]);
+            ints[base + i] = (alpha << 24) | (r << 16) | (g << 8) | b;
+        }
+
+        if (bytes) {
+            byte[] b = (byte[]) data;
+            boolean alpha = type == BufferedImage.TYPE_4BYTE_ABGR;
+            int p = offset;
+            for (int j = 0; j < width; ++j) {
+                int argb = ints[j];
+                if (alpha) {
+                    b[p++] = (byte) (argb >>> 24);
+                }
+                b[p++] = (byte) argb;
+                b[p++] = (byte) (argb >> 8);
+                b[p++] = (byte) (argb >> 16);
+            }
+        }
+    }
+
+    /** 0 ~ 255 rounded */
+    private static IntVector toInt(FloatVector v, FloatVector zero, FloatVector max, FloatVector half) {
+        return (IntVector) v.max(zero).min(max).add(half).convert(VectorOperators.F2I, 0);
+    }
+
+    /** 0 ~ 255 rounded */
+    private static int clamp(float v) {
+        return (int) (Math.min(Math.max(v, 0f), 255f) + 0.5f);
+    }
+}
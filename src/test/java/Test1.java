@@ -9,36 +9,75 @@ import java.awt.Graphics;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 import javax.imageio.ImageIO;
+import javax.imageio.IIOImage;
 import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOReadUpdateListener;
 import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import vavi.awt.image.avif.AvifInfo;
+import vavi.awt.image.avif.AvifParser;
 import vavi.awt.image.avif.jna.Avif;
+import vavi.awt.image.avif.jna.DecodeOptions;
+import vavi.awt.image.avif.jna.DecodedImageCache;
+import vavi.awt.image.avif.jna.EncodeOptions;
+import vavi.awt.image.avif.jna.YuvImage;
+import vavi.awt.image.avif.jna.YuvToRgb;
+import vavi.awt.image.jna.avif.AvifDirect;
+import vavi.awt.image.jna.avif.AvifLibrary;
+import vavi.awt.image.jna.avif.avifDecoder;
+import vavi.awt.image.jna.avif.avifRGBImage;
+import vavi.imageio.avif.AvifImageReadParam;
+import vavi.imageio.avif.AvifImageWriteParam;
 import vavi.util.Debug;
 import vavi.util.properties.annotation.Property;
 import vavi.util.properties.annotation.PropsEntity;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -231,4 +270,825 @@ for (String w : ws) {
         ImageIO.write(image, "avif", p.toFile());
         ImageIO.read(Files.newInputStream(p));
     }
+
+    /** reads the file into a direct buffer */
+    static ByteBuffer read(Path path) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocateDirect((int) Files.size(path));
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            while (bb.hasRemaining()) {
+                if (channel.read(bb) < 0) break;
+            }
+        }
+        bb.flip();
+        return bb;
+    }
+
+    @Test
+    @DisplayName("async")
+    void test7() throws Exception {
+        ByteBuffer bb = read(Paths.get(file));
+        BufferedImage image = Avif.getInstance().decodeAsync(bb, bb.capacity()).get();
+        assertNotNull(image);
+Debug.printf("image: %dx%d%n", image.getWidth(), image.getHeight());
+        ByteBuffer encoded = Avif.getInstance().encodeAsync(image, 60).get();
+        assertTrue(encoded.remaining() > 0);
+    }
+
+    @Test
+    @DisplayName("batch")
+    void test8() throws Exception {
+        List<Path> sources = List.of(
+                Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"),
+                Paths.get("src/test/resources/data/io/kodim23_yuv420_8bpc.avif"),
+                Paths.get("src/test/resources/kimono.avif"));
+        BufferedImage[] images = new BufferedImage[sources.size()];
+        Avif.getInstance().decodeAll(sources, (i, image) -> images[i] = image);
+        for (BufferedImage image : images) {
+            assertNotNull(image);
+        }
+    }
+
+    @Test
+    @DisplayName("mapped file")
+    void test9() throws Exception {
+        BufferedImage image = Avif.getInstance().decode(Paths.get(file));
+        assertNotNull(image);
+
+        ImageReader ir = ImageIO.getImageReadersByFormatName("avif").next();
+        ir.setInput(Paths.get(file).toFile());
+        BufferedImage image2 = ir.read(0);
+        assertEquals(image.getWidth(), image2.getWidth());
+        assertEquals(image.getHeight(), image2.getHeight());
+
+        // ImageIO.read(File) is mapped without --add-opens
+        try (ImageInputStream iis = ImageIO.createImageInputStream(Paths.get(file).toFile())) {
+            assertEquals("MappableFileImageInputStream", iis.getClass().getSimpleName());
+        }
+        BufferedImage image3 = ImageIO.read(Paths.get(file).toFile());
+        assertNotNull(image3);
+        assertArrayEquals(((DataBufferByte) image.getRaster().getDataBuffer()).getData(),
+                ((DataBufferByte) image3.getRaster().getDataBuffer()).getData());
+    }
+
+    @Test
+    @DisplayName("yuv planes")
+    void test10() throws Exception {
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"));
+        YuvImage decoded;
+        try (YuvImage yuv = Avif.getInstance().decodeYuv(bb, bb.capacity())) {
+Debug.printf("yuv: %dx%d, depth: %d, format: %d%n", yuv.getWidth(), yuv.getHeight(), yuv.getDepth(), yuv.getYuvFormat());
+            assertEquals(AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420, yuv.getYuvFormat());
+            assertEquals((yuv.getWidth() + 1) / 2, yuv.getPlaneWidth(AvifLibrary.avifChannelIndex.AVIF_CHAN_U));
+            ByteBuffer y = yuv.getPlane(AvifLibrary.avifChannelIndex.AVIF_CHAN_Y);
+            assertTrue(y.isReadOnly());
+            assertEquals(yuv.getRowBytes(AvifLibrary.avifChannelIndex.AVIF_CHAN_Y) * yuv.getHeight(), y.capacity());
+            decoded = yuv;
+        }
+        assertThrows(IllegalStateException.class, () -> decoded.getPlane(AvifLibrary.avifChannelIndex.AVIF_CHAN_Y));
+
+        // the caller's planes are also read-only through the image
+        ByteBuffer[] planes = { ByteBuffer.allocateDirect(4), ByteBuffer.allocateDirect(1), ByteBuffer.allocateDirect(1), null };
+        YuvImage yuv = new YuvImage(2, 2, 8, AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420, AvifLibrary.avifRange.AVIF_RANGE_FULL,
+                AvifLibrary.AVIF_MATRIX_COEFFICIENTS_BT601, planes, new int[] { 2, 1, 1, 0 });
+        assertTrue(yuv.getPlane(AvifLibrary.avifChannelIndex.AVIF_CHAN_Y).isReadOnly());
+        assertTrue(yuv.getPlane(AvifLibrary.avifChannelIndex.AVIF_CHAN_U).isReadOnly());
+        yuv.close();
+        assertThrows(IllegalStateException.class, () -> yuv.getPlane(AvifLibrary.avifChannelIndex.AVIF_CHAN_U));
+    }
+
+    @Test
+    @DisplayName("encode yuv planes")
+    void test11() throws Exception {
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"));
+        ByteBuffer encoded;
+        int width, height;
+        try (YuvImage yuv = Avif.getInstance().decodeYuv(bb, bb.capacity())) {
+            width = yuv.getWidth();
+            height = yuv.getHeight();
+            encoded = Avif.getInstance().encode(yuv, 60);
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.remaining()).put(encoded).flip();
+        try (YuvImage yuv = Avif.getInstance().decodeYuv(direct, direct.capacity())) {
+            assertEquals(width, yuv.getWidth());
+            assertEquals(height, yuv.getHeight());
+            assertEquals(AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420, yuv.getYuvFormat());
+        }
+    }
+
+    @Test
+    @DisplayName("java yuv to rgb")
+    void test12() throws Exception {
+        // only the nearest upsampling goes to the java converter
+        Method allowsNearest = DecodeOptions.class.getDeclaredMethod("allowsNearest");
+        allowsNearest.setAccessible(true);
+        assertFalse((boolean) allowsNearest.invoke(new DecodeOptions()));
+        assertFalse((boolean) allowsNearest.invoke(new DecodeOptions().setChromaUpsampling(AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_BEST_QUALITY)));
+        assertTrue((boolean) allowsNearest.invoke(new DecodeOptions().setChromaUpsampling(AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_FASTEST)));
+        assertTrue((boolean) allowsNearest.invoke(new DecodeOptions().setChromaUpsampling(AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_NEAREST)));
+
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim23_yuv420_8bpc.avif"));
+        // libavif's own converter with the same upsampling
+        DecodeOptions options = new DecodeOptions()
+                .setChromaUpsampling(AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_NEAREST)
+                .setAvoidLibYUV(true);
+        BufferedImage expected = Avif.getInstance().decode(bb, bb.capacity(), options);
+        BufferedImage actual = new BufferedImage(expected.getWidth(), expected.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        try (YuvImage yuv = Avif.getInstance().decodeYuv(bb, bb.capacity())) {
+            YuvToRgb yuvToRgb = YuvToRgb.getInstance();
+Debug.println("converter: " + yuvToRgb.getClass().getSimpleName());
+            yuvToRgb.convert(yuv, actual);
+        }
+        int diff = 0;
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                for (int s = 0; s < 32; s += 8) {
+                    diff = Math.max(diff, Math.abs(((e >> s) & 0xff) - ((a >> s) & 0xff)));
+                }
+            }
+        }
+Debug.println("max diff: " + diff);
+        // float rounding only
+        assertTrue(diff <= 1);
+    }
+
+    @Test
+    @DisplayName("incremental")
+    void test13() throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get(file));
+        // a slow stream
+        InputStream is = new ByteArrayInputStream(bytes) {
+            @Override public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1024));
+            }
+        };
+        int[] updates = new int[2];
+        BufferedImage image = Avif.getInstance().decode(is, 0, new Avif.DecodeListener() {
+            @Override public void rowsDecoded(BufferedImage image, int y0, int y1) {
+Debug.println("rows: " + y0 + " - " + y1);
+                updates[0]++;
+            }
+            @Override public void layerDecoded(BufferedImage image, int layer, int layers) {
+                updates[1]++;
+            }
+        });
+        ByteBuffer bb = read(Paths.get(file));
+        BufferedImage expected = Avif.getInstance().decode(bb, bb.capacity());
+        assertEquals(expected.getWidth(), image.getWidth());
+        assertEquals(expected.getHeight(), image.getHeight());
+        assertTrue(updates[0] > 0);
+        assertTrue(updates[1] > 0);
+
+        // through the reader, the bands notified are the ones of the image
+        List<int[]> bands = new ArrayList<>();
+        ImageReader reader = ImageIO.getImageReadersByFormatName("avif").next();
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            reader.setInput(iis);
+            reader.addIIOReadUpdateListener(new IIOReadUpdateListener() {
+                @Override public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass, int minX, int minY, int periodX, int periodY, int[] bands2) {
+                    bands.add(bands2);
+                }
+                @Override public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY, int width, int height, int periodX, int periodY, int[] bands2) {
+                    bands.add(bands2);
+                }
+                @Override public void passComplete(ImageReader source, BufferedImage theImage) {}
+                @Override public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass, int maxPass, int minX, int minY, int periodX, int periodY, int[] bands2) {}
+                @Override public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY, int width, int height, int periodX, int periodY, int[] bands2) {}
+                @Override public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {}
+            });
+            BufferedImage image2 = reader.read(0);
+            assertTrue(bands.size() > 1);
+            for (int[] b : bands) {
+                assertEquals(image2.getRaster().getNumBands(), b.length);
+            }
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    @Test
+    @DisplayName("parse boxes in java")
+    void test14() throws Exception {
+        for (String f : List.of(file, "src/test/resources/data/sofa_grid1x5_420.avif", "src/test/resources/data/io/cosmos1650_yuv444_10bpc_p3pq.avif")) {
+            AvifInfo info;
+            try (SeekableByteChannel channel = Files.newByteChannel(Paths.get(f))) {
+                info = AvifParser.parse(channel);
+            }
+Debug.println(info);
+            ByteBuffer bb = read(Paths.get(f));
+            assertTrue(AvifParser.isAvif(bb));
+            assertEquals(info.getWidth(), AvifParser.parse(bb).getWidth());
+            try (YuvImage yuv = Avif.getInstance().decodeYuv(bb, bb.capacity())) {
+                assertEquals(yuv.getWidth(), info.getWidth());
+                assertEquals(yuv.getHeight(), info.getHeight());
+                assertEquals(yuv.getDepth(), info.getDepth());
+                assertEquals(yuv.getYuvFormat(), info.getYuvFormat());
+                assertEquals(yuv.getMatrixCoefficients(), info.getMatrixCoefficients());
+                assertEquals(yuv.hasAlpha(), info.hasAlpha());
+            }
+        }
+
+        ImageReader ir = ImageIO.getImageReadersByFormatName("avif").next();
+        ir.setInput(ImageIO.createImageInputStream(Paths.get(file).toFile()));
+        assertEquals(1, ir.getNumImages(true));
+        assertEquals(722, ir.getWidth(0));
+        assertEquals(1024, ir.getHeight(0));
+    }
+
+    @Test
+    @DisplayName("decoded image cache")
+    void test15() throws Exception {
+        Avif avif = Avif.getInstance();
+        DecodedImageCache cache = avif.getCache();
+        long maxBytes = cache.getMaxBytes();
+        try {
+            cache.setMaxBytes(64 * 1024 * 1024);
+            cache.clear();
+            DecodedImageCache.Stats before = cache.getStats();
+            ByteBuffer bb = read(Paths.get(file));
+            BufferedImage image1 = avif.decode(bb, bb.capacity());
+            // the image of a miss belongs to the caller, the cache has its own copy
+            int rgb = image1.getRGB(100, 100);
+            image1.setRGB(100, 100, ~rgb);
+            BufferedImage image2 = avif.decode(bb, bb.capacity());
+            DecodedImageCache.Stats after = cache.getStats();
+Debug.println(after);
+            assertEquals(1, after.misses() - before.misses());
+            assertEquals(1, after.hits() - before.hits());
+            assertEquals(1, after.entries());
+            assertNotSame(image1, image2);
+            assertEquals(image1.getType(), image2.getType());
+            assertEquals(rgb, image2.getRGB(100, 100));
+
+            // other bytes of the same length are another entry
+            ByteBuffer other = ByteBuffer.allocateDirect(bb.capacity()).put(bb.duplicate()).flip();
+            other.put(other.capacity() - 1, (byte) ~other.get(other.capacity() - 1));
+            try {
+                avif.decode(other, other.capacity());
+            } catch (IllegalStateException e) {
+Debug.println("broken tail: " + e.getMessage());
+            }
+            assertEquals(1, cache.getStats().hits() - before.hits());
+
+            cache.setMaxBytes(1);
+            assertEquals(0, cache.getStats().entries());
+        } finally {
+            cache.setMaxBytes(maxBytes);
+        }
+    }
+
+    @Test
+    @DisplayName("decode an item other than the primary one, for thumbnails")
+    void test16() throws Exception {
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/sofa_grid1x5_420.avif"));
+        AvifInfo info = AvifParser.parse(bb);
+        // the first tile of the grid
+        ByteBuffer tile = AvifParser.withPrimaryItem(bb, 2);
+        BufferedImage image = Avif.getInstance().decode(tile, tile.capacity());
+Debug.println(image.getWidth() + "x" + image.getHeight());
+        assertEquals(info.getWidth() / info.getGridColumns(), image.getWidth());
+        assertEquals((info.getHeight() + info.getGridRows() - 1) / info.getGridRows(), image.getHeight());
+
+        ImageReader ir = ImageIO.getImageReadersByFormatName("avif").next();
+        ir.setInput(ImageIO.createImageInputStream(Paths.get(file).toFile()));
+        assertTrue(ir.readerSupportsThumbnails());
+        assertEquals(0, ir.getNumThumbnails(0));
+
+        // lossless 64x48 of rgb (x * 4, y * 5, 200) with a 16x12 thumbnail of rgb (x * 16, y * 20, 200)
+        ir.setInput(ImageIO.createImageInputStream(Paths.get("src/test/resources/data/thumbnail.avif").toFile()));
+        assertEquals(1, ir.getNumThumbnails(0));
+        BufferedImage thumbnail = ir.readThumbnail(0, 0);
+        assertEquals(16, thumbnail.getWidth());
+        assertEquals(12, thumbnail.getHeight());
+        for (int y = 0; y < thumbnail.getHeight(); y++) {
+            for (int x = 0; x < thumbnail.getWidth(); x++) {
+                assertEquals(0xff000000 | x * 16 << 16 | y * 20 << 8 | 200, thumbnail.getRGB(x, y));
+            }
+        }
+        BufferedImage primary = ir.read(0);
+        assertEquals(64, primary.getWidth());
+        assertEquals(48, primary.getHeight());
+        assertEquals(0xff000000 | 63 * 4 << 16 | 47 * 5 << 8 | 200, primary.getRGB(63, 47));
+    }
+
+    @Test
+    @DisplayName("opaque images")
+    void test17() throws Exception {
+        ByteBuffer bb = read(Paths.get(file));
+        BufferedImage image = Avif.getInstance().decode(bb, bb.capacity());
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, image.getType());
+
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Avif.getInstance().decode(bb, bb.capacity(), rgb);
+        for (int y = 0; y < image.getHeight(); y += 17) {
+            for (int x = 0; x < image.getWidth(); x += 13) {
+                assertEquals(image.getRGB(x, y), rgb.getRGB(x, y));
+            }
+        }
+
+        ImageReader ir = ImageIO.getImageReadersByFormatName("avif").next();
+        ir.setInput(ImageIO.createImageInputStream(Paths.get(file).toFile()));
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, ir.getImageTypes(0).next().getBufferedImageType());
+    }
+
+    @Test
+    @DisplayName("premultiplied")
+    void test18() throws Exception {
+        BufferedImage source = new BufferedImage(64, 64, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                source.setRGB(x, y, (x * 4) << 24 | 0xc08040);
+            }
+        }
+        ByteBuffer encoded = Avif.getInstance().encode(source, 90);
+        ByteBuffer bb = ByteBuffer.allocateDirect(encoded.remaining()).put(encoded).flip();
+
+        BufferedImage straight = Avif.getInstance().decode(bb, bb.capacity());
+        BufferedImage premultiplied = Avif.getInstance().decodePremultiplied(bb, bb.capacity());
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR, straight.getType());
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR_PRE, premultiplied.getType());
+        BufferedImage ints = Avif.getInstance().decode(bb, bb.capacity(), new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB_PRE));
+        for (int x = 0; x < 64; x++) {
+            int[] s = straight.getRaster().getPixel(x, 32, (int[]) null); // r, g, b, a
+            int[] p = premultiplied.getRaster().getPixel(x, 32, (int[]) null);
+            for (int c = 0; c < 3; c++) {
+                assertTrue(Math.abs(s[c] * s[3] / 255 - p[c]) <= 2, x + ", " + c + ": " + s[c] + ", " + s[3] + ", " + p[c]);
+            }
+            assertEquals(premultiplied.getRGB(x, 32), ints.getRGB(x, 32));
+        }
+    }
+
+    @Test
+    @DisplayName("rgb 565")
+    void test19() throws Exception {
+        ByteBuffer bb = read(Paths.get(file));
+        BufferedImage image = Avif.getInstance().decode(bb, bb.capacity());
+        BufferedImage rgb565 = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_USHORT_565_RGB);
+        Avif.getInstance().decode(bb, bb.capacity(), rgb565);
+        for (int y = 0; y < image.getHeight(); y += 17) {
+            for (int x = 0; x < image.getWidth(); x += 13) {
+                int e = image.getRGB(x, y);
+                int a = rgb565.getRGB(x, y);
+                for (int s = 0; s < 24; s += 8) {
+                    assertTrue(Math.abs(((e >> s) & 0xff) - ((a >> s) & 0xff)) <= 8, x + ", " + y + ": " + Integer.toHexString(e) + ", " + Integer.toHexString(a));
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("chroma upsampling")
+    void test20() throws Exception {
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"));
+        BufferedImage fastest = Avif.getInstance().decode(bb, bb.capacity(), new DecodeOptions()
+                .setChromaUpsampling(AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_FASTEST));
+        BufferedImage best = Avif.getInstance().decode(bb, bb.capacity(), new DecodeOptions()
+                .setChromaUpsampling(AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_BEST_QUALITY)
+                .setAvoidLibYUV(true));
+        long diff = 0;
+        for (int y = 0; y < best.getHeight(); y++) {
+            for (int x = 0; x < best.getWidth(); x++) {
+                int e = best.getRGB(x, y);
+                int a = fastest.getRGB(x, y);
+                for (int s = 0; s < 24; s += 8) {
+                    diff += Math.abs(((e >> s) & 0xff) - ((a >> s) & 0xff));
+                }
+            }
+        }
+        double mean = (double) diff / (best.getWidth() * best.getHeight() * 3);
+Debug.println("mean diff: " + mean);
+        assertTrue(mean > 0 && mean < 4);
+
+        ImageReader ir = ImageIO.getImageReadersByFormatName("avif").next();
+        ir.setInput(ImageIO.createImageInputStream(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif").toFile()));
+        AvifImageReadParam param = (AvifImageReadParam) ir.getDefaultReadParam();
+        param.setChromaUpsampling(AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_FASTEST);
+        BufferedImage image = ir.read(0, param);
+        assertEquals(fastest.getRGB(100, 100), image.getRGB(100, 100));
+    }
+
+    @Test
+    @DisplayName("chroma upsampling benchmark")
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void test21() throws Exception {
+        String[] files = {
+            "src/test/resources/data/io/kodim03_yuv420_8bpc.avif",
+            "src/test/resources/data/io/kodim23_yuv420_8bpc.avif",
+            "src/test/resources/data/sofa_grid1x5_420.avif",
+        };
+        int[] modes = {
+            AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_AUTOMATIC,
+            AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_FASTEST,
+            AvifLibrary.avifChromaUpsampling.AVIF_CHROMA_UPSAMPLING_BEST_QUALITY,
+        };
+        int n = 30;
+        for (String f : files) {
+            ByteBuffer bb = read(Paths.get(f));
+            for (int mode : modes) {
+                for (boolean avoidLibYUV : new boolean[] {false, true}) {
+                    DecodeOptions options = new DecodeOptions().setChromaUpsampling(mode).setAvoidLibYUV(avoidLibYUV);
+                    BufferedImage image = Avif.getInstance().decode(bb, bb.capacity(), options); // warm up
+                    long t = System.nanoTime();
+                    for (int i = 0; i < n; i++) {
+                        Avif.getInstance().decodeFrame(bb, bb.capacity(), 0, image, options);
+                    }
+                    double sec = (System.nanoTime() - t) / 1e9;
+                    Debug.printf("%s: upsampling: %d, avoidLibYUV: %b, %.1f images/s, %.1f Mpixels/s%n",
+                            Paths.get(f).getFileName(), mode, avoidLibYUV, n / sec, (double) image.getWidth() * image.getHeight() * n / sec / 1e6);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("chroma downsampling")
+    void test22() throws Exception {
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"));
+        BufferedImage image = Avif.getInstance().decode(bb, bb.capacity());
+
+        ByteBuffer yuv444 = Avif.getInstance().encode(image, 60);
+        ByteBuffer yuv420 = Avif.getInstance().encode(image, 60, new EncodeOptions()
+                .setYuvFormat(AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420)
+                .setChromaDownsampling(AvifLibrary.avifChromaDownsampling.AVIF_CHROMA_DOWNSAMPLING_AVERAGE));
+Debug.println("444: " + yuv444.remaining() + ", 420: " + yuv420.remaining());
+        assertTrue(yuv420.remaining() < yuv444.remaining());
+        assertEquals(AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV444, AvifParser.parse(yuv444).getYuvFormat());
+        assertEquals(AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV420, AvifParser.parse(yuv420).getYuvFormat());
+
+        ImageWriter iw = ImageIO.getImageWritersByFormatName("avif").next();
+        AvifImageWriteParam param = (AvifImageWriteParam) iw.getDefaultWriteParam();
+        param.setYuvFormat(AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV422);
+        param.setChromaDownsampling(AvifLibrary.avifChromaDownsampling.AVIF_CHROMA_DOWNSAMPLING_FASTEST);
+        Path p = Paths.get("tmp/test22.avif");
+        if (!Files.exists(p.getParent())) Files.createDirectories(p.getParent());
+        Files.deleteIfExists(p);
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(p.toFile())) {
+            iw.setOutput(ios);
+            iw.write(null, new IIOImage(image, null, null), param);
+        }
+        AvifInfo info = AvifParser.parse(read(p));
+        assertEquals(AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV422, info.getYuvFormat());
+        assertEquals(image.getWidth(), info.getWidth());
+    }
+
+    @Test
+    @DisplayName("codec choice")
+    void test23() throws Exception {
+Debug.println("codecs: " + Avif.getCodecVersions());
+        assertNotNull(Avif.getCodecName(AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO, AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_DECODE));
+        assertThrows(IllegalArgumentException.class, () -> Avif.getCodecChoice("nosuchcodec", AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_DECODE));
+
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"));
+        BufferedImage expected = Avif.getInstance().decode(bb, bb.capacity());
+        for (int codec = AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AOM; codec <= AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AVM; codec++) {
+            String name = Avif.getCodecName(codec, AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_DECODE);
+            if (name != null) {
+                assertEquals(codec, Avif.getCodecChoice(name, AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_DECODE));
+                BufferedImage image = Avif.getInstance().decode(bb, bb.capacity(), new DecodeOptions().setCodecChoice(codec));
+Debug.println("decoded by " + name);
+                assertEquals(expected.getRGB(100, 100), image.getRGB(100, 100));
+            }
+            name = Avif.getCodecName(codec, AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_ENCODE);
+            if (name != null) {
+                ByteBuffer encoded = Avif.getInstance().encode(expected, 60, new EncodeOptions().setCodecChoice(codec));
+Debug.println("encoded by " + name + ": " + encoded.remaining());
+                assertTrue(AvifParser.isAvif(encoded));
+            }
+        }
+
+        ImageReader ir = ImageIO.getImageReadersByFormatName("avif").next();
+        AvifImageReadParam param = (AvifImageReadParam) ir.getDefaultReadParam();
+        assertThrows(IllegalArgumentException.class, () -> param.setCodecChoice(-1));
+    }
+
+    @Test
+    @DisplayName("codec specific options")
+    void test24() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> new EncodeOptions().setCodecSpecificOption("tune=ssim", "x"));
+
+        int aom = AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AOM;
+        if (Avif.getCodecName(aom, AvifLibrary.avifCodecFlag.AVIF_CODEC_FLAG_CAN_ENCODE) == null) {
+Debug.println("aom encoder is not available: " + Avif.getCodecVersions());
+            return;
+        }
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"));
+        BufferedImage image = Avif.getInstance().decode(bb, bb.capacity());
+
+        ImageWriter iw = ImageIO.getImageWritersByFormatName("avif").next();
+        AvifImageWriteParam param = (AvifImageWriteParam) iw.getDefaultWriteParam();
+        param.setCodecChoice(aom);
+        param.setCodecSpecificOptions(Map.of("tune", "ssim", "sharpness", "2"));
+        Path p = Paths.get("tmp/test24.avif");
+        if (!Files.exists(p.getParent())) Files.createDirectories(p.getParent());
+        Files.deleteIfExists(p);
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(p.toFile())) {
+            iw.setOutput(ios);
+            iw.write(null, new IIOImage(image, null, null), param);
+        }
+        assertTrue(AvifParser.isAvif(read(p)));
+
+        EncodeOptions bad = new EncodeOptions().setCodecChoice(aom).setCodecSpecificOption("no-such-option", "1");
+        assertThrows(IllegalArgumentException.class, () -> Avif.getInstance().encode(image, 60, bad));
+    }
+
+    @Test
+    @DisplayName("lossless round trip")
+    void test25() throws Exception {
+        String[] files = {
+            "src/test/resources/kimono.avif",
+            "src/test/resources/data/sofa_grid1x5_420.avif",
+            "src/test/resources/data/io/kodim03_yuv420_8bpc.avif",
+            "src/test/resources/data/io/kodim23_yuv420_8bpc.avif",
+            "src/test/resources/data/io/cosmos1650_yuv444_10bpc_p3pq.avif",
+        };
+        EncodeOptions options = new EncodeOptions().setLossless(true);
+        for (String f : files) {
+            ByteBuffer bb = read(Paths.get(f));
+            BufferedImage source = Avif.getInstance().decode(bb, bb.capacity());
+
+            ByteBuffer encoded = Avif.getInstance().encode(source, 60, options);
+            AvifInfo info = AvifParser.parse(encoded);
+            assertEquals(AvifLibrary.avifPixelFormat.AVIF_PIXEL_FORMAT_YUV444, info.getYuvFormat());
+            assertEquals(AvifLibrary.AVIF_MATRIX_COEFFICIENTS_IDENTITY, info.getMatrixCoefficients());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(encoded.remaining()).put(encoded).flip();
+            BufferedImage decoded = Avif.getInstance().decode(direct, direct.capacity());
+Debug.println(Paths.get(f).getFileName() + ": " + bb.capacity() + " -> " + direct.capacity() + " bytes");
+            assertEquals(source.getType(), decoded.getType());
+            assertArrayEquals(((DataBufferByte) source.getRaster().getDataBuffer()).getData(),
+                    ((DataBufferByte) decoded.getRaster().getDataBuffer()).getData(), f);
+        }
+    }
+
+    @Test
+    @DisplayName("encode to size")
+    void test26() throws Exception {
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim23_yuv420_8bpc.avif"));
+        BufferedImage image = Avif.getInstance().decode(bb, bb.capacity());
+
+        int maxBytes = Avif.getInstance().encode(image, 50).remaining();
+        ByteBuffer encoded = Avif.getInstance().encodeToSize(image, maxBytes);
+Debug.println("budget: " + maxBytes + ", size: " + encoded.remaining());
+        assertTrue(encoded.remaining() <= maxBytes);
+        // quality 50 fits, so the result is quality 50 or higher
+        assertTrue(encoded.remaining() >= maxBytes * 9 / 10);
+
+        assertThrows(IllegalArgumentException.class, () -> Avif.getInstance().encodeToSize(image, 10));
+
+        ImageWriter iw = ImageIO.getImageWritersByFormatName("avif").next();
+        AvifImageWriteParam param = (AvifImageWriteParam) iw.getDefaultWriteParam();
+        param.setMaxBytes(maxBytes);
+        Path p = Paths.get("tmp/test26.avif");
+        if (!Files.exists(p.getParent())) Files.createDirectories(p.getParent());
+        Files.deleteIfExists(p);
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(p.toFile())) {
+            iw.setOutput(ios);
+            iw.write(null, new IIOImage(image, null, null), param);
+        }
+        assertTrue(Files.size(p) <= maxBytes);
+    }
+
+    @Test
+    @DisplayName("native gate offloads virtual threads")
+    void test27() throws Exception {
+        Method newVirtualThreadPerTaskExecutor;
+        try {
+            newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+Debug.println("virtual threads are not supported");
+            return;
+        }
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"));
+        byte[] expected = ((DataBufferByte) Avif.getInstance().decode(bb, bb.capacity()).getRaster().getDataBuffer()).getData();
+
+        // replace the gate by the one which offloads, as -Dvavi.awt.image.avif.gate.offloadVirtual=true does
+        Field field = Avif.class.getDeclaredField("gate");
+        field.setAccessible(true);
+        Object gate = field.get(Avif.getInstance());
+        Constructor<?> constructor = gate.getClass().getDeclaredConstructor(int.class, boolean.class);
+        constructor.setAccessible(true);
+        field.set(Avif.getInstance(), constructor.newInstance(2, true));
+        ExecutorService executor = (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        try {
+            List<Future<BufferedImage>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> Avif.getInstance().decode(bb, bb.capacity())));
+            }
+            for (Future<BufferedImage> future : futures) {
+                assertArrayEquals(expected, ((DataBufferByte) future.get().getRaster().getDataBuffer()).getData());
+            }
+            assertTrue(Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().startsWith("avif-native-")));
+        } finally {
+            executor.shutdown();
+            field.set(Avif.getInstance(), gate);
+        }
+    }
+
+    @Test
+    @DisplayName("direct mapped functions")
+    void test28() throws Exception {
+        ByteBuffer bb = read(Paths.get("src/test/resources/data/io/kodim03_yuv420_8bpc.avif"));
+        BufferedImage expected = Avif.getInstance().getCompatibleImage(bb, bb.capacity());
+        expected = new BufferedImage(expected.getWidth(), expected.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+        // AvifDirect inside
+        Avif.getInstance().decode(bb, bb.capacity(), expected);
+
+        // the proxy functions only
+        avifDecoder decoder = AvifLibrary.INSTANCE.avifDecoderCreate();
+        avifRGBImage rgb = new avifRGBImage();
+        try {
+            assertEquals(AvifLibrary.avifResult.AVIF_RESULT_OK, AvifLibrary.INSTANCE.avifDecoderSetIOMemory(decoder, Native.getDirectBufferPointer(bb), new NativeLong(bb.capacity())));
+            assertEquals(AvifLibrary.avifResult.AVIF_RESULT_OK, AvifLibrary.INSTANCE.avifDecoderParse(decoder));
+            assertEquals(AvifLibrary.avifResult.AVIF_RESULT_OK, AvifLibrary.INSTANCE.avifDecoderNextImage(decoder));
+            assertEquals(AvifLibrary.INSTANCE.avifImagePlaneRowBytes(decoder.image, AvifLibrary.avifChannelIndex.AVIF_CHAN_Y),
+                    AvifDirect.avifImagePlaneRowBytes(decoder.image.getPointer(), AvifLibrary.avifChannelIndex.AVIF_CHAN_Y));
+            AvifLibrary.INSTANCE.avifRGBImageSetDefaults(rgb, decoder.image);
+            rgb.depth = 8;
+            rgb.format = AvifLibrary.avifRGBFormat.AVIF_RGB_FORMAT_RGBA;
+            AvifLibrary.INSTANCE.avifRGBImageAllocatePixels(rgb);
+            assertEquals(AvifLibrary.avifResult.AVIF_RESULT_OK, AvifLibrary.INSTANCE.avifImageYUVToRGB(decoder.image, rgb));
+            byte[] rgba = rgb.pixels.getByteArray(0, rgb.rowBytes * rgb.height);
+            for (int y = 0; y < rgb.height; y++) {
+                for (int x = 0; x < rgb.width; x++) {
+                    int o = y * rgb.rowBytes + x * 4;
+                    int argb = (rgba[o + 3] & 0xff) << 24 | (rgba[o] & 0xff) << 16 | (rgba[o + 1] & 0xff) << 8 | (rgba[o + 2] & 0xff);
+                    assertEquals(argb, expected.getRGB(x, y));
+                }
+            }
+        } finally {
+            AvifLibrary.INSTANCE.avifRGBImageFreePixels(rgb);
+            AvifLibrary.INSTANCE.avifDecoderDestroy(decoder);
+        }
+    }
+
+    @Test
+    @DisplayName("pooled decoder is not marshalled")
+    void test29() throws Exception {
+        Field field = Avif.class.getDeclaredField("decoderPool");
+        field.setAccessible(true);
+        Object pool = field.get(Avif.getInstance());
+        Method acquire = pool.getClass().getDeclaredMethod("acquire", int.class, int.class, Pointer.class, int.class);
+        acquire.setAccessible(true);
+        Method release = pool.getClass().getDeclaredMethod("release", avifDecoder.class);
+        release.setAccessible(true);
+
+        ByteBuffer bb = read(Paths.get("src/test/resources/kimono.avif"));
+        avifDecoder decoder = (avifDecoder) acquire.invoke(pool, AvifLibrary.avifCodecChoice.AVIF_CODEC_CHOICE_AUTO, 1, Native.getDirectBufferPointer(bb), bb.capacity());
+        try {
+            assertFalse(decoder.getAutoRead());
+            assertFalse(decoder.getAutoWrite());
+        } finally {
+            release.invoke(pool, decoder);
+        }
+
+        // a reused decoder gives the same image
+        BufferedImage expected = Avif.getInstance().decode(bb, bb.capacity());
+        BufferedImage actual = Avif.getInstance().decode(bb, bb.capacity());
+        assertNotSame(expected, actual);
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertArrayEquals(((DataBufferByte) expected.getRaster().getDataBuffer()).getData(),
+                ((DataBufferByte) actual.getRaster().getDataBuffer()).getData());
+    }
+
+    @Test
+    @DisplayName("parallel bands vs single pass")
+    void test30() throws Exception {
+        Field field = Avif.class.getDeclaredField("bands");
+        field.setAccessible(true);
+        Object bands = field.get(Avif.getInstance());
+        Constructor<?> constructor = bands.getClass().getDeclaredConstructor(int.class, int.class);
+        constructor.setAccessible(true);
+        try {
+            for (String name : new String[] {
+                    "src/test/resources/data/io/kodim03_yuv420_8bpc.avif",
+                    "src/test/resources/data/sofa_grid1x5_420.avif"}) {
+                ByteBuffer bb = read(Paths.get(name));
+                field.set(Avif.getInstance(), constructor.newInstance(1, 16));
+                BufferedImage expected = Avif.getInstance().decode(bb, bb.capacity());
+                field.set(Avif.getInstance(), constructor.newInstance(4, 16));
+                BufferedImage actual = Avif.getInstance().decode(bb, bb.capacity());
+Debug.println(name + ": " + actual.getWidth() + "x" + actual.getHeight());
+                assertArrayEquals(((DataBufferByte) expected.getRaster().getDataBuffer()).getData(),
+                        ((DataBufferByte) actual.getRaster().getDataBuffer()).getData(), name);
+            }
+        } finally {
+            field.set(Avif.getInstance(), bands);
+        }
+    }
+
+    @Test
+    @DisplayName("malformed boxes")
+    void test31() throws Exception {
+        byte[] ispe = box("ispe", 0, 64, 48);
+        byte[] iloc = box("iloc", 0, u8(0x44), u8(0), u16(1), u16(1), u16(0), u16(1), 0, 8);
+        AvifInfo info = AvifParser.parse(ByteBuffer.wrap(avif("avif", "av01", ispe, iloc)));
+        assertEquals(64, info.getWidth());
+        assertEquals(48, info.getHeight());
+
+        // truncated ispe
+        byte[] truncated = avif("avif", "av01", box("ispe", 0, 64), iloc);
+        assertThrows(IOException.class, () -> AvifParser.parse(ByteBuffer.wrap(truncated)));
+        // an extent out of the file
+        byte[] outOfFile = avif("avif", "grid", ispe, box("iloc", 0, u8(0x44), u8(0), u16(1), u16(1), u16(0), u16(1), 0x7fff0000, 8));
+        assertThrows(IOException.class, () -> AvifParser.parse(ByteBuffer.wrap(outOfFile)));
+        // a negative length
+        byte[] negative = avif("avif", "grid", ispe, box("iloc", 0, u8(0x48), u8(0), u16(1), u16(1), u16(0), u16(1), 0, -1L));
+        assertThrows(IOException.class, () -> AvifParser.parse(ByteBuffer.wrap(negative)));
+        // a meta without its version and flags
+        byte[] meta = ByteBuffer.allocate(24 + 10).put(box("ftyp", "avif", 0, "avif", "mif1")).put(box("meta", u8(0), u8(0))).array();
+        assertThrows(IOException.class, () -> AvifParser.parse(ByteBuffer.wrap(meta)));
+
+        // an image sequence with an alpha track
+        byte[] mdia = box("mdia", box("hdlr", 0, 0, "pict", 0, 0, 0, u8(0)), box("minf", box("stbl", box("stsz", 0, 0, 3))));
+        byte[] opaque = avif("avis", "av01", ispe, iloc, box("moov", box("trak", mdia)));
+        info = AvifParser.parse(ByteBuffer.wrap(opaque));
+        assertEquals(3, info.getFrameCount());
+        assertFalse(info.hasAlpha());
+        byte[] alpha = avif("avis", "av01", ispe, iloc, box("moov", box("trak", mdia), box("trak", box("tref", box("auxl", 1)), mdia)));
+        info = AvifParser.parse(ByteBuffer.wrap(alpha));
+        assertEquals(3, info.getFrameCount());
+        assertTrue(info.hasAlpha());
+
+        // an image sequence without meta, the dimensions come from the track
+        byte[] ftyp = box("ftyp", "avis", 0, "avis", "msf1");
+        byte[] tkhd = box("tkhd", 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0x10000, 0, 0, 0, 0x10000, 0, 0, 0, 0x40000000, 320 << 16, 240 << 16);
+        byte[] moov = box("moov", box("trak", tkhd, mdia));
+        byte[] trackOnly = ByteBuffer.allocate(ftyp.length + moov.length).put(ftyp).put(moov).array();
+        info = AvifParser.parse(ByteBuffer.wrap(trackOnly));
+        assertEquals(320, info.getWidth());
+        assertEquals(240, info.getHeight());
+        assertEquals(3, info.getFrameCount());
+        byte[] av01 = box("av01", 0, u16(0), u16(1), 0, 0, 0, 0, u16(160), u16(120));
+        moov = box("moov", box("trak", box("mdia", box("hdlr", 0, 0, "pict", 0, 0, 0, u8(0)),
+                box("minf", box("stbl", box("stsd", 0, 1, av01), box("stsz", 0, 0, 3))))));
+        byte[] entryOnly = ByteBuffer.allocate(ftyp.length + moov.length).put(ftyp).put(moov).array();
+        info = AvifParser.parse(ByteBuffer.wrap(entryOnly));
+        assertEquals(160, info.getWidth());
+        assertEquals(120, info.getHeight());
+
+        // the last box up to the end of the file
+        byte[] last = trackOnly.clone();
+        ByteBuffer.wrap(last).putInt(ftyp.length, 0);
+        Path path = Files.createTempFile("test31", ".avif");
+        try {
+            Files.write(path, last);
+            try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+                info = AvifParser.parse(channel);
+            }
+            assertEquals(320, info.getWidth());
+            assertEquals(3, info.getFrameCount());
+        } finally {
+            Files.delete(path);
+        }
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(last))) {
+            info = AvifParser.parse(stream);
+        }
+        assertEquals(320, info.getWidth());
+        assertEquals(3, info.getFrameCount());
+    }
+
+    /** @param parts byte[] as is, String in ISO-8859-1, Integer in 32 bits, Long in 64 bits */
+    static byte[] box(String type, Object... parts) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (Object part : parts) {
+            if (part instanceof byte[] b) {
+                body.writeBytes(b);
+            } else if (part instanceof String s) {
+                body.writeBytes(s.getBytes(StandardCharsets.ISO_8859_1));
+            } else if (part instanceof Integer i) {
+                body.writeBytes(ByteBuffer.allocate(4).putInt(i).array());
+            } else if (part instanceof Long l) {
+                body.writeBytes(ByteBuffer.allocate(8).putLong(l).array());
+            }
+        }
+        return ByteBuffer.allocate(8 + body.size()).putInt(8 + body.size()).put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .put(body.toByteArray()).array();
+    }
+
+    static byte[] u16(int value) {
+        return new byte[] {(byte) (value >> 8), (byte) value};
+    }
+
+    static byte[] u8(int value) {
+        return new byte[] {(byte) value};
+    }
+
+    /** a file of the item 1 which has the ispe and is located by the iloc */
+    static byte[] avif(String brand, String itemType, byte[] ispe, byte[] iloc, byte[]... boxes) {
+        byte[] meta = box("meta", 0,
+                box("hdlr", 0, 0, "pict", 0, 0, 0, u8(0)),
+                box("pitm", 0, u16(1)),
+                iloc,
+                box("iinf", 0, u16(1), box("infe", 0x02000000, u16(1), u16(0), itemType, u8(0))),
+                box("iprp", box("ipco", ispe), box("ipma", 0, 1, u16(1), u8(1), u8(0x81))));
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.writeBytes(box("ftyp", brand, 0, "avif", "mif1", "avis", "msf1"));
+        file.writeBytes(meta);
+        for (byte[] b : boxes) {
+            file.writeBytes(b);
+        }
+        return file.toByteArray();
+    }
 }